@@ -1,81 +1,143 @@
-import java.util.ArrayList;
-import java.util.List;
-
 public class BackpatchTable
 {
-    //four parallel lists for each part of the table
-    private List<String> ids;
-    private List<Integer> scopes;
-    private List<String> placeholders;
-    private List<String> backpatchValues; //this one won't be populated until the end when the actual values are known
+    //parallel arrays for each part of the table
+    //the index of a variable in these arrays is its slot, which is what the code refers to until it is backpatched
+    private String[] ids;
+    private int[] scopes;
+    private int[] addresses; //this one won't be populated until the end when the actual values are known
+
+    //open addressing hash table from an (id, scope) pair to its slot
+    //each bucket holds slot + 1, so 0 means the bucket is empty
+    private int[] buckets;
 
     //the total number of entries in the table
     private int varCount;
+    private final Log log;
 
-    public BackpatchTable()
+    //log is where the messages about new variables are printed
+    public BackpatchTable(Log outputLog)
     {
-        placeholders = new ArrayList<String>();
-        backpatchValues = new ArrayList<String>();
-        ids = new ArrayList<String>();
-        scopes = new ArrayList<Integer>();
+        log = outputLog;
+        addresses = new int[0];
+        ids = new String[8];
+        scopes = new int[8];
+        buckets = new int[16];
 
         varCount = 0;
     }
 
     //tries to find the variable and scope pair in the table
-    //if found, return the temp value
-    //else, add a new entry into the table and return the new temp value
-    public String findOrCreate(String id, int scope)
+    //if found, return its slot
+    //else, add a new entry into the table and return the new slot
+    public int findOrCreate(String id, int scope)
     {
-        //search through the current table by iterating through the ids and scopes
-        for(int i = 0;i < varCount;i++)
+        int hash = hash(id, scope);
+        int mask = buckets.length - 1;
+
+        //probe the buckets starting from the hash until the pair or an empty bucket is found
+        for(int bucket = hash & mask;buckets[bucket] != 0;bucket = (bucket + 1) & mask)
         {
-            //if the id (in the correct scope) is found, return its temp value
-            if(ids.get(i).equals(id) && scopes.get(i).equals(scope))
-                return placeholders.get(i);
+            //if the id (in the correct scope) is found, return its slot
+            int slot = buckets[bucket] - 1;
+            if(scopes[slot] == scope && ids[slot].equals(id))
+                return slot;
         }
 
-        System.out.println("DEBUG Code Gen - Creating variable " + id + " in scope " + scope);
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Code Gen", "Creating variable " + id + " in scope " + scope);
 
-        //if not found, create a new entry in the table (new value in each list)
-        ids.add(id);
-        scopes.add(scope);
-        //the placeholder name is T and the current count
-        String tempName = "T" + varCount + " 00 ";
+        //if not found, create a new entry in the table (new value in each array)
+        if(varCount == ids.length)
+        {
+            String[] newIds = new String[ids.length * 2];
+            int[] newScopes = new int[scopes.length * 2];
+            System.arraycopy(ids, 0, newIds, 0, varCount);
+            System.arraycopy(scopes, 0, newScopes, 0, varCount);
+            ids = newIds;
+            scopes = newScopes;
+        }
+
+        ids[varCount] = id;
+        scopes[varCount] = scope;
         varCount++;
-        placeholders.add(tempName);
 
-        return tempName;
+        //keep the hash table at most half full so probes stay short
+        if(varCount * 2 > buckets.length)
+            rehash(buckets.length * 2);
+        else
+            insert(hash, varCount);
+
+        return varCount - 1;
     }
 
     //fill in the backpatch row of the table
     public void backpatch(int startingValue)
     {
+        addresses = new int[varCount];
+
         int currentValue = startingValue;
         for(int i = 0;i < varCount;i++)
         {
-            //add the base 16 representation of the value
-            backpatchValues.add(Integer.toString(currentValue, 16).toUpperCase());
+            addresses[i] = currentValue;
             //each variable only needs one byte, so just increase the value by 1
             currentValue++;
         }
     }
 
-    //get the backpatch value of the associated temp value (given first half of little endian)
-    public String getBackpatchValue(String placeholderValue)
+    //fill in the backpatch row of the table, with each slot at the given offset from the starting value
+    //(slots can share an offset, see StorageAllocator)
+    public void backpatch(int startingValue, int[] offsets)
     {
-        //the assumption is that only the first half of the little endian format is given, so add the 00
-        int index = placeholders.indexOf(placeholderValue + " 00 ");
+        addresses = new int[varCount];
 
-        //if not found, just return the placeholder value
-        if(index == -1)
-            return placeholderValue;
-        else
-            return backpatchValues.get(index);
+        for(int i = 0;i < varCount;i++)
+            addresses[i] = startingValue + offsets[i];
+    }
+
+    //get the address of each slot, indexed by slot (only valid after backpatch())
+    public int[] getAddresses()
+    {
+        return addresses;
     }
 
     public int size()
     {
         return varCount;
     }
+
+    public String getId(int slot)
+    {
+        return ids[slot];
+    }
+
+    public int getScope(int slot)
+    {
+        return scopes[slot];
+    }
+
+    //puts the slot (stored as slot + 1) into the first empty bucket for the hash
+    private void insert(int hash, int storedSlot)
+    {
+        int mask = buckets.length - 1;
+        int bucket = hash & mask;
+        while(buckets[bucket] != 0)
+            bucket = (bucket + 1) & mask;
+
+        buckets[bucket] = storedSlot;
+    }
+
+    //makes a bigger hash table and puts every slot back into it
+    private void rehash(int newSize)
+    {
+        buckets = new int[newSize];
+        for(int i = 0;i < varCount;i++)
+            insert(hash(ids[i], scopes[i]), i + 1);
+    }
+
+    //mixes the id and scope together, spreading the bits so nearby scopes don't land in nearby buckets
+    private static int hash(String id, int scope)
+    {
+        int h = id.hashCode() * 31 + scope;
+        return h ^ (h >>> 16) ^ (h >>> 7);
+    }
 }
@@ -0,0 +1,382 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/*
+Measures how fast each stage of the compiler is, and how fast the whole pipeline is
+
+Every stage is run on its own, with the input it needs (tokens or AST) made ahead of time,
+so a slowdown in one stage shows up in that stage's numbers and not just in the total:
+    lex       - Lexer.getNextProgram() on every program in the file
+    parse     - Parser.tryParseProgram() on every lexed program (building only the AST)
+    semantic  - SemanticAnalyzer.tryAnalyzeProgram() on every CST
+    codegen   - CodeGenerator.tryCodeGeneration() on every AST
+    emulate   - Emulator.run() on every executable
+    translate - running every executable through the class made for it by ExecutableTranslator (translated ahead of time)
+    jvm       - running every program compiled by JvmCodeGenerator (compiled ahead of time)
+    pipeline  - everything the Compiler does for the file, including printing the trees and executables
+
+The inputs are the given files (the Tests folder by default) and a few programs from ProgramGenerator
+that stress the things the test files don't have much of (deep nesting, long strings, many variables, and many programs)
+
+For each stage and input it reports
+    ops/s     - how many times the whole input was run through the stage per second (with the standard deviation)
+    us/op     - the average time for one run through the input
+    B/op      - bytes allocated for one run through the input
+    MB/s      - the allocation rate while running
+    gc        - the number of garbage collections and the time spent in them during the measured iterations
+
+Usage: java Benchmark [-stage=<name>] [-warmup=<n>] [-iterations=<n>] [-time=<ms>] [-log=<level>] [-seed=<n>] [files...]
+ */
+public class Benchmark
+{
+    private static final String[] STAGES = {"lex", "parse", "semantic", "codegen", "emulate", "translate", "jvm", "pipeline"};
+
+    //results are added into this so the JIT can't throw away the work being measured
+    private static volatile long sink;
+
+    public static void main(String[] args) throws IOException
+    {
+        String stage = "all";
+        int warmupIterations = 3;
+        int iterations = 5;
+        long iterationTime = 1000;
+        LogLevel logLevel = LogLevel.DEBUG;
+        long seed = 0;
+        List<String> fileNames = new ArrayList<String>();
+
+        for(String arg : args)
+        {
+            if(arg.startsWith("-stage="))
+                stage = arg.substring("-stage=".length());
+            else if(arg.startsWith("-warmup="))
+                warmupIterations = Integer.parseInt(arg.substring("-warmup=".length()));
+            else if(arg.startsWith("-iterations="))
+                iterations = Integer.parseInt(arg.substring("-iterations=".length()));
+            else if(arg.startsWith("-time="))
+                iterationTime = Long.parseLong(arg.substring("-time=".length()));
+            else if(arg.startsWith("-log="))
+                logLevel = LogLevel.valueOf(arg.substring("-log=".length()).toUpperCase());
+            else if(arg.startsWith("-seed="))
+                seed = Long.parseLong(arg.substring("-seed=".length()));
+            else
+                fileNames.add(arg);
+        }
+
+        //default to the Tests folder, which is next to the src folder
+        if(fileNames.isEmpty())
+        {
+            File[] tests = new File("../Tests").listFiles();
+            if(tests != null)
+            {
+                for(File test : tests)
+                {
+                    if(test.getName().endsWith(".txt"))
+                        fileNames.add(test.getPath());
+                }
+            }
+            fileNames.sort(null);
+        }
+
+        List<BenchmarkInput> inputs = new ArrayList<BenchmarkInput>();
+        for(String fileName : fileNames)
+            inputs.add(new BenchmarkInput(new File(fileName).getName(), new String(Files.readAllBytes(new File(fileName).toPath()))));
+
+        //synthetic programs, always made from the same seed so the results can be compared between runs
+        ProgramGenerator deepNesting = new ProgramGenerator(seed);
+        deepNesting.setNestingDepth(40);
+        deepNesting.setBooleanNesting(3);
+        inputs.add(new BenchmarkInput("deep-nesting", deepNesting.generate()));
+
+        ProgramGenerator longStrings = new ProgramGenerator(seed);
+        longStrings.setStringLength(60);
+        longStrings.setProgramCount(20);
+        inputs.add(new BenchmarkInput("long-strings", longStrings.generate()));
+
+        ProgramGenerator manyVariables = new ProgramGenerator(seed);
+        manyVariables.setNestingDepth(4);
+        manyVariables.setDeclarationsPerScope(8);
+        manyVariables.setAdditionLength(6);
+        inputs.add(new BenchmarkInput("many-variables", manyVariables.generate()));
+
+        ProgramGenerator manyPrograms = new ProgramGenerator(seed);
+        manyPrograms.setProgramCount(200);
+        manyPrograms.setInvalidPercent(10);
+        inputs.add(new BenchmarkInput("many-programs", manyPrograms.generate()));
+
+        //everything the compiler prints is thrown away, but still built and formatted
+        Log log = new Log(Writer.nullWriter(), logLevel, false);
+
+        System.out.println(String.format("%-10s %-16s %14s %12s %12s %12s %10s %10s",
+                "stage", "input", "ops/s", "+-", "us/op", "B/op", "MB/s", "gc (ms)"));
+
+        for(String stageName : STAGES)
+        {
+            if(!stage.equals("all") && !stage.equals(stageName))
+                continue;
+
+            for(BenchmarkInput input : inputs)
+            {
+                input.prepare(log);
+                BenchmarkResult result = measure(stageName, input, log, warmupIterations, iterations, iterationTime);
+                System.out.println(String.format("%-10s %-16s %14.1f %12.1f %12.2f %12d %10.1f %4d (%3d)",
+                        stageName, input.name, result.opsPerSecond, result.opsDeviation, result.microsPerOp,
+                        result.bytesPerOp, result.allocationRate, result.gcCount, result.gcTime));
+            }
+        }
+    }
+
+    //runs the stage over the input for the warmup iterations, then measures the rest of the iterations
+    private static BenchmarkResult measure(String stage, BenchmarkInput input, Log log, int warmupIterations, int iterations, long iterationTime)
+    {
+        for(int i = 0;i < warmupIterations;i++)
+            runFor(stage, input, log, iterationTime);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        double[] opsPerSecond = new double[iterations];
+        long totalOps = 0;
+        long totalTime = 0;
+        long totalBytes = 0;
+        long gcCountBefore = gcCount();
+        long gcTimeBefore = gcTime();
+
+        for(int i = 0;i < iterations;i++)
+        {
+            long bytesBefore = threads.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long ops = runFor(stage, input, log, iterationTime);
+            long time = System.nanoTime() - start;
+            totalBytes += threads.getThreadAllocatedBytes(threadId) - bytesBefore;
+
+            opsPerSecond[i] = ops * 1e9 / time;
+            totalOps += ops;
+            totalTime += time;
+        }
+
+        BenchmarkResult result = new BenchmarkResult();
+        result.opsPerSecond = totalOps * 1e9 / totalTime;
+        result.opsDeviation = standardDeviation(opsPerSecond);
+        result.microsPerOp = totalTime / 1e3 / totalOps;
+        result.bytesPerOp = totalBytes / totalOps;
+        result.allocationRate = totalBytes / 1e6 / (totalTime / 1e9);
+        result.gcCount = gcCount() - gcCountBefore;
+        result.gcTime = gcTime() - gcTimeBefore;
+        return result;
+    }
+
+    //runs the stage over the input as many times as fits in the time (at least once), and returns how many times it ran
+    private static long runFor(String stage, BenchmarkInput input, Log log, long time)
+    {
+        long end = System.nanoTime() + time * 1000000;
+        long ops = 0;
+
+        do
+        {
+            sink += runOnce(stage, input, log);
+            ops++;
+        }
+        while(System.nanoTime() < end);
+
+        return ops;
+    }
+
+    //runs the stage over the whole input once, returning something that depends on the result
+    private static long runOnce(String stage, BenchmarkInput input, Log log)
+    {
+        long result = 0;
+
+        switch(stage)
+        {
+            case "lex":
+            {
+                Lexer lexer = new Lexer(new Scanner(input.text), log);
+                while(lexer.hasNextProgram())
+                    result += lexer.getNextProgram().size();
+                break;
+            }
+            case "parse":
+            {
+                for(int i = 0;i < input.tokens.size();i++)
+                {
+                    SyntaxTree ast = new Parser(log, false).tryParseProgram(input.tokens.get(i), i, input.lexErrors.get(i));
+                    result += ast == null ? 0 : 1;
+                }
+                break;
+            }
+            case "semantic":
+            {
+                for(int i = 0;i < input.parsedASTs.size();i++)
+                {
+                    SyntaxTree ast = new SemanticAnalyzer(log).tryAnalyzeProgram(input.parsedASTs.get(i), i, input.parsedASTs.get(i) == null);
+                    result += ast == null ? 0 : 1;
+                }
+                break;
+            }
+            case "codegen":
+            {
+                for(int i = 0;i < input.asts.size();i++)
+                {
+                    CodeGenerator generator = new CodeGenerator(log, false);
+                    generator.tryCodeGeneration(input.asts.get(i), i, input.asts.get(i) == null);
+                    result += generator.hasError() ? 0 : 1;
+                }
+                break;
+            }
+            case "emulate":
+            {
+                for(byte[] executable : input.executables)
+                {
+                    Emulator emulator = new Emulator(executable);
+                    emulator.run();
+                    result += emulator.getCycles();
+                }
+                break;
+            }
+            case "translate":
+            {
+                for(ExecutableTranslator translator : input.translators)
+                {
+                    ExecutableRunner runner = translator.newRunner();
+                    runner.run();
+                    result += runner.getCycles();
+                }
+                break;
+            }
+            case "jvm":
+            {
+                for(JvmCodeGenerator generator : input.jvmPrograms)
+                {
+                    JvmProgram program = generator.newProgram();
+                    program.run();
+                    result += program.getOutput().length();
+                }
+                break;
+            }
+            case "pipeline":
+            {
+                Lexer lexer = new Lexer(new Scanner(input.text), log);
+                while(lexer.hasNextProgram())
+                {
+                    ProgramCompilation program = new ProgramCompilation(log, new CompilerOptions());
+                    program.lex(lexer);
+                    program.compile();
+                    result++;
+                }
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    private static long gcCount()
+    {
+        long count = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            count += Math.max(gc.getCollectionCount(), 0);
+        return count;
+    }
+
+    private static long gcTime()
+    {
+        long time = 0;
+        for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            time += Math.max(gc.getCollectionTime(), 0);
+        return time;
+    }
+
+    private static double standardDeviation(double[] values)
+    {
+        double mean = 0;
+        for(double value : values)
+            mean += value;
+        mean /= values.length;
+
+        double variance = 0;
+        for(double value : values)
+            variance += (value - mean) * (value - mean);
+
+        return Math.sqrt(variance / values.length);
+    }
+}
+
+//the text of one input file, along with the input each stage needs, made once ahead of time
+class BenchmarkInput
+{
+    final String name;
+    final String text;
+
+    final List<TokenBuffer> tokens = new ArrayList<TokenBuffer>();
+    final List<Boolean> lexErrors = new ArrayList<Boolean>();
+    final List<SyntaxTree> parsedASTs = new ArrayList<SyntaxTree>();
+    final List<SyntaxTree> asts = new ArrayList<SyntaxTree>();
+    final List<byte[]> executables = new ArrayList<byte[]>();
+    final List<ExecutableTranslator> translators = new ArrayList<ExecutableTranslator>();
+    final List<JvmCodeGenerator> jvmPrograms = new ArrayList<JvmCodeGenerator>();
+
+    BenchmarkInput(String inputName, String inputText)
+    {
+        name = inputName;
+        text = inputText;
+    }
+
+    //runs each stage once to get the input for the next stage (null trees are for programs that had errors)
+    void prepare(Log log)
+    {
+        if(!tokens.isEmpty())
+            return;
+
+        Lexer lexer = new Lexer(new Scanner(text), log);
+        while(lexer.hasNextProgram())
+        {
+            tokens.add(lexer.getNextProgram());
+            lexErrors.add(lexer.hasError());
+        }
+
+        for(int i = 0;i < tokens.size();i++)
+        {
+            Parser parser = new Parser(log, false);
+            SyntaxTree parsedAST = parser.tryParseProgram(tokens.get(i), i, lexErrors.get(i));
+            parsedASTs.add(parser.hasError() ? null : parsedAST);
+
+            SemanticAnalyzer analyzer = new SemanticAnalyzer(log);
+            SyntaxTree ast = analyzer.tryAnalyzeProgram(parsedASTs.get(i), i, parsedASTs.get(i) == null);
+            asts.add(analyzer.hasError() ? null : ast);
+
+            //only programs that made it through code generation are run
+            CodeGenerator generator = new CodeGenerator(log, false);
+            generator.tryCodeGeneration(asts.get(i), i, asts.get(i) == null);
+            if(!generator.hasError())
+            {
+                ExecutableTranslator translator = new ExecutableTranslator(generator.getExecutable());
+                translator.translate();
+                executables.add(generator.getExecutable());
+                translators.add(translator);
+            }
+
+            JvmCodeGenerator jvmGenerator = new JvmCodeGenerator(log);
+            jvmGenerator.tryCodeGeneration(asts.get(i), i, asts.get(i) == null);
+            if(!jvmGenerator.hasError())
+                jvmPrograms.add(jvmGenerator);
+        }
+    }
+}
+
+class BenchmarkResult
+{
+    double opsPerSecond;
+    double opsDeviation;
+    double microsPerOp;
+    long bytesPerOp;
+    double allocationRate;
+    long gcCount;
+    long gcTime;
+}
@@ -0,0 +1,634 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/*
+Writes a JVM class file, for code that is turned into JVM bytecode and loaded while the compiler is running
+
+Only what the compiler needs is supported: a constant pool, fields, and methods with code (no attributes besides Code)
+Classes are written as version 49 (Java 5), the last version that doesn't need StackMapTable frames,
+so the bytecode can jump anywhere without working out the types on the stack at every jump target
+
+Each method's code is written with a MethodWriter, which fills in the jump offsets to its labels once the code is done
+ */
+public class ClassFileWriter
+{
+    //the class file version (49.0 is Java 5)
+    private static final int MAJOR_VERSION = 49;
+
+    public static final int ACC_PUBLIC = 0x0001;
+    public static final int ACC_PRIVATE = 0x0002;
+    public static final int ACC_PROTECTED = 0x0004;
+    public static final int ACC_STATIC = 0x0008;
+    public static final int ACC_FINAL = 0x0010;
+    public static final int ACC_SUPER = 0x0020;
+
+    //the constant pool tags
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_LONG = 5;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELD_REF = 9;
+    private static final int CONSTANT_METHOD_REF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final String className;
+    private final String superName;
+
+    //the constant pool, and the index of each constant in it (keyed by its tag and value, so each constant is only added once)
+    private final ByteArrayOutputStream constantPool;
+    private final DataOutputStream constants;
+    private final HashMap<String, Integer> constantIndexes;
+    private int constantCount;
+
+    private final ArrayList<byte[]> fields;
+    private final ArrayList<MethodWriter> methods;
+
+    //names are internal names (ex. "java/lang/Object")
+    public ClassFileWriter(String name, String superClassName)
+    {
+        className = name;
+        superName = superClassName;
+
+        constantPool = new ByteArrayOutputStream();
+        constants = new DataOutputStream(constantPool);
+        constantIndexes = new HashMap<String, Integer>();
+        constantCount = 1;
+
+        fields = new ArrayList<byte[]>();
+        methods = new ArrayList<MethodWriter>();
+    }
+
+    public String getClassName()
+    {
+        return className;
+    }
+
+    public String getSuperName()
+    {
+        return superName;
+    }
+
+    //adds a field to the class
+    public void addField(int access, String name, String descriptor)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeShort(access);
+            out.writeShort(utf8(name));
+            out.writeShort(utf8(descriptor));
+            out.writeShort(0);
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    //adds a method to the class, and returns the writer its code is written with
+    public MethodWriter addMethod(int access, String name, String descriptor)
+    {
+        MethodWriter method = new MethodWriter(this, access, utf8(name), utf8(descriptor));
+        methods.add(method);
+        return method;
+    }
+
+    //returns the bytes of the whole class file
+    public byte[] toByteArray()
+    {
+        int thisClass = classRef(className);
+        int superClass = classRef(superName);
+        int codeName = utf8("Code");
+
+        //every method's code has to be finished (adding its constants) before the constant pool is written
+        ArrayList<byte[]> methodBytes = new ArrayList<byte[]>();
+        for(MethodWriter method : methods)
+            methodBytes.add(method.toByteArray(codeName));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try
+        {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+
+            out.writeShort(constantCount);
+            constants.flush();
+            constantPool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0);
+
+            out.writeShort(fields.size());
+            for(byte[] field : fields)
+                out.write(field);
+
+            out.writeShort(methodBytes.size());
+            for(byte[] method : methodBytes)
+                out.write(method);
+
+            out.writeShort(0);
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /*------------------------------------------ Constant Pool -------------------------------------------*/
+    //each returns the index of the constant, adding it if it isn't already there
+
+    public int utf8(String value)
+    {
+        Integer index = constantIndexes.get("U" + value);
+        if(index != null)
+            return index;
+
+        try
+        {
+            constants.writeByte(CONSTANT_UTF8);
+            constants.writeUTF(value);
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+        return addConstant("U" + value, 1);
+    }
+
+    public int integer(int value)
+    {
+        Integer index = constantIndexes.get("I" + value);
+        if(index != null)
+            return index;
+
+        writeConstant(CONSTANT_INTEGER, value >>> 16, value & 0xFFFF);
+        return addConstant("I" + value, 1);
+    }
+
+    public int longConstant(long value)
+    {
+        Integer index = constantIndexes.get("J" + value);
+        if(index != null)
+            return index;
+
+        writeConstant(CONSTANT_LONG, (int) (value >>> 48), (int) (value >>> 32) & 0xFFFF, (int) (value >>> 16) & 0xFFFF, (int) value & 0xFFFF);
+
+        //longs take up two entries in the constant pool
+        return addConstant("J" + value, 2);
+    }
+
+    public int string(String value)
+    {
+        Integer index = constantIndexes.get("S" + value);
+        if(index != null)
+            return index;
+
+        int utf8 = utf8(value);
+        writeConstant(CONSTANT_STRING, utf8);
+        return addConstant("S" + value, 1);
+    }
+
+    public int classRef(String name)
+    {
+        Integer index = constantIndexes.get("C" + name);
+        if(index != null)
+            return index;
+
+        int utf8 = utf8(name);
+        writeConstant(CONSTANT_CLASS, utf8);
+        return addConstant("C" + name, 1);
+    }
+
+    public int fieldRef(String owner, String name, String descriptor)
+    {
+        return memberRef(CONSTANT_FIELD_REF, owner, name, descriptor);
+    }
+
+    public int methodRef(String owner, String name, String descriptor)
+    {
+        return memberRef(CONSTANT_METHOD_REF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor)
+    {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        writeConstant(tag, ownerIndex, nameAndType);
+        return addConstant(key, 1);
+    }
+
+    private int nameAndType(String name, String descriptor)
+    {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = constantIndexes.get(key);
+        if(index != null)
+            return index;
+
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        writeConstant(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        return addConstant(key, 1);
+    }
+
+    //writes a constant made of a tag and 2 byte values
+    private void writeConstant(int tag, int... values)
+    {
+        try
+        {
+            constants.writeByte(tag);
+            for(int value : values)
+                constants.writeShort(value);
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int addConstant(String key, int entries)
+    {
+        int index = constantCount;
+        constantIndexes.put(key, index);
+        constantCount += entries;
+        return index;
+    }
+}
+
+/*
+The code of one method in a class being written by ClassFileWriter
+
+Instructions are written one at a time with the op codes below
+Jumps go to labels, like in CodeBuffer: newLabel() makes one, placeLabel() puts it at the current end of the code,
+and the offset of every jump is filled in once the method is done
+The most locals used is worked out from the loads and stores written, but the most stack used has to be set with setMaxStack()
+ */
+class MethodWriter
+{
+    //the JVM op codes that are used
+    public static final int ACONST_NULL = 0x01;
+    public static final int ICONST_0 = 0x03;
+    public static final int LCONST_0 = 0x09;
+    public static final int BIPUSH = 0x10;
+    public static final int SIPUSH = 0x11;
+    public static final int LDC_W = 0x13;
+    public static final int LDC2_W = 0x14;
+    public static final int ILOAD = 0x15;
+    public static final int LLOAD = 0x16;
+    public static final int ALOAD = 0x19;
+    public static final int BALOAD = 0x33;
+    public static final int ISTORE = 0x36;
+    public static final int LSTORE = 0x37;
+    public static final int ASTORE = 0x3A;
+    public static final int BASTORE = 0x54;
+    public static final int POP = 0x57;
+    public static final int DUP = 0x59;
+    public static final int DUP2 = 0x5C;
+    public static final int IADD = 0x60;
+    public static final int LADD = 0x61;
+    public static final int ISUB = 0x64;
+    public static final int IAND = 0x7E;
+    public static final int IINC = 0x84;
+    public static final int I2L = 0x85;
+    public static final int I2B = 0x91;
+    public static final int LCMP = 0x94;
+    public static final int IFEQ = 0x99;
+    public static final int IFNE = 0x9A;
+    public static final int IFLT = 0x9B;
+    public static final int IFGE = 0x9C;
+    public static final int IFGT = 0x9D;
+    public static final int IFLE = 0x9E;
+    public static final int IF_ICMPEQ = 0x9F;
+    public static final int IF_ICMPNE = 0xA0;
+    public static final int IF_ACMPEQ = 0xA5;
+    public static final int IF_ACMPNE = 0xA6;
+    public static final int GOTO = 0xA7;
+    public static final int TABLESWITCH = 0xAA;
+    public static final int IRETURN = 0xAC;
+    public static final int ARETURN = 0xB0;
+    public static final int RETURN = 0xB1;
+    public static final int GETSTATIC = 0xB2;
+    public static final int PUTSTATIC = 0xB3;
+    public static final int GETFIELD = 0xB4;
+    public static final int PUTFIELD = 0xB5;
+    public static final int INVOKEVIRTUAL = 0xB6;
+    public static final int INVOKESPECIAL = 0xB7;
+    public static final int INVOKESTATIC = 0xB8;
+    public static final int NEW = 0xBB;
+    public static final int NEWARRAY = 0xBC;
+    public static final int ATHROW = 0xBF;
+    public static final int WIDE = 0xC4;
+
+    //the type given to NEWARRAY for a byte array
+    public static final int T_BYTE = 8;
+
+    private final ClassFileWriter classFile;
+    private final int access;
+    private final int nameIndex;
+    private final int descriptorIndex;
+
+    private final ByteArrayOutputStream code;
+
+    //where each label was placed (-1 if it hasn't been), and the jumps that need each label's offset filled in
+    private final ArrayList<Integer> labelPositions;
+    private final ArrayList<int[]> jumps;
+
+    private int maxStack;
+    private int maxLocals;
+
+    public MethodWriter(ClassFileWriter writer, int methodAccess, int name, int descriptor)
+    {
+        classFile = writer;
+        access = methodAccess;
+        nameIndex = name;
+        descriptorIndex = descriptor;
+
+        code = new ByteArrayOutputStream();
+        labelPositions = new ArrayList<Integer>();
+        jumps = new ArrayList<int[]>();
+
+        maxStack = 0;
+        maxLocals = (methodAccess & ClassFileWriter.ACC_STATIC) == 0 ? 1 : 0;
+    }
+
+    //sets the most values that are ever on the stack at once
+    public void setMaxStack(int stack)
+    {
+        maxStack = stack;
+    }
+
+    //makes sure there is room for at least this many locals (used for parameters that the code never loads)
+    public void reserveLocals(int locals)
+    {
+        maxLocals = Math.max(maxLocals, locals);
+    }
+
+    //returns the number of bytes of code written so far
+    public int size()
+    {
+        return code.size();
+    }
+
+    //writes an instruction with no operands
+    public void emit(int opCode)
+    {
+        code.write(opCode);
+    }
+
+    //pushes an int constant, using the smallest instruction that can hold it
+    public void pushInt(int value)
+    {
+        if(value >= -1 && value <= 5)
+        {
+            code.write(ICONST_0 + value);
+        }
+        else if(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+        {
+            code.write(BIPUSH);
+            code.write(value);
+        }
+        else if(value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+        {
+            code.write(SIPUSH);
+            writeShort(value);
+        }
+        else
+        {
+            code.write(LDC_W);
+            writeShort(classFile.integer(value));
+        }
+    }
+
+    public void pushLong(long value)
+    {
+        if(value == 0 || value == 1)
+        {
+            code.write(LCONST_0 + (int) value);
+        }
+        else
+        {
+            code.write(LDC2_W);
+            writeShort(classFile.longConstant(value));
+        }
+    }
+
+    public void pushString(String value)
+    {
+        code.write(LDC_W);
+        writeShort(classFile.string(value));
+    }
+
+    //writes a load or store of a local (ILOAD, LLOAD, ALOAD, ISTORE, LSTORE, or ASTORE)
+    public void local(int opCode, int local)
+    {
+        //locals past 255 need a 2 byte index
+        if(local > 0xFF)
+        {
+            code.write(WIDE);
+            code.write(opCode);
+            writeShort(local);
+        }
+        else
+        {
+            code.write(opCode);
+            code.write(local);
+        }
+
+        //longs take up two locals
+        int size = opCode == LLOAD || opCode == LSTORE ? 2 : 1;
+        maxLocals = Math.max(maxLocals, local + size);
+    }
+
+    //adds a constant to an int local
+    public void increment(int local, int amount)
+    {
+        if(local > 0xFF || amount < Byte.MIN_VALUE || amount > Byte.MAX_VALUE)
+        {
+            code.write(WIDE);
+            code.write(IINC);
+            writeShort(local);
+            writeShort(amount);
+        }
+        else
+        {
+            code.write(IINC);
+            code.write(local);
+            code.write(amount);
+        }
+        maxLocals = Math.max(maxLocals, local + 1);
+    }
+
+    //writes GETFIELD, PUTFIELD, GETSTATIC, or PUTSTATIC
+    public void field(int opCode, String owner, String name, String descriptor)
+    {
+        code.write(opCode);
+        writeShort(classFile.fieldRef(owner, name, descriptor));
+    }
+
+    //writes INVOKEVIRTUAL, INVOKESPECIAL, or INVOKESTATIC
+    public void invoke(int opCode, String owner, String name, String descriptor)
+    {
+        code.write(opCode);
+        writeShort(classFile.methodRef(owner, name, descriptor));
+    }
+
+    //writes NEW (or any other instruction that takes a class)
+    public void type(int opCode, String className)
+    {
+        code.write(opCode);
+        writeShort(classFile.classRef(className));
+    }
+
+    //writes NEWARRAY for an array of the given primitive type
+    public void newArray(int arrayType)
+    {
+        code.write(NEWARRAY);
+        code.write(arrayType);
+    }
+
+    public int newLabel()
+    {
+        labelPositions.add(-1);
+        return labelPositions.size() - 1;
+    }
+
+    //places the label at the current end of the code
+    public void placeLabel(int label)
+    {
+        labelPositions.set(label, code.size());
+    }
+
+    //writes a jump (GOTO or any of the IF instructions) to the label
+    public void jump(int opCode, int label)
+    {
+        int position = code.size();
+        code.write(opCode);
+        jumps.add(new int[] {position, position + 1, label, 2});
+        writeShort(0);
+    }
+
+    //writes a TABLESWITCH that jumps to labels[value - low], or to defaultLabel if the value is outside of the labels
+    public void tableSwitch(int low, int defaultLabel, int[] labels)
+    {
+        int position = code.size();
+        code.write(TABLESWITCH);
+
+        //the operands start on a multiple of 4 from the start of the code
+        while(code.size() % 4 != 0)
+            code.write(0);
+
+        jumps.add(new int[] {position, code.size(), defaultLabel, 4});
+        writeInt(0);
+        writeInt(low);
+        writeInt(low + labels.length - 1);
+        for(int label : labels)
+        {
+            jumps.add(new int[] {position, code.size(), label, 4});
+            writeInt(0);
+        }
+    }
+
+    //returns the bytes of the method_info structure (only called by ClassFileWriter once the code is done)
+    byte[] toByteArray(int codeName)
+    {
+        byte[] bytes = code.toByteArray();
+        if(bytes.length > 0xFFFF)
+            throw new IllegalStateException("Method is too big (" + bytes.length + " bytes of code)");
+
+        //fill in the offset of every jump, which is relative to the start of the jump instruction
+        for(int[] jump : jumps)
+        {
+            int target = labelPositions.get(jump[2]);
+            if(target < 0)
+                throw new IllegalStateException("Label " + jump[2] + " was never placed");
+
+            int offset = target - jump[0];
+            if(jump[3] == 2)
+            {
+                if(offset < Short.MIN_VALUE || offset > Short.MAX_VALUE)
+                    throw new IllegalStateException("Jump is too far for a method");
+
+                bytes[jump[1]] = (byte) (offset >> 8);
+                bytes[jump[1] + 1] = (byte) offset;
+            }
+            else
+            {
+                for(int i = 0;i < 4;i++)
+                    bytes[jump[1] + i] = (byte) (offset >> (24 - 8 * i));
+            }
+        }
+
+        ByteArrayOutputStream method = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(method);
+        try
+        {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+
+            //the only attribute is the code
+            out.writeShort(1);
+            out.writeShort(codeName);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+        catch(IOException e)
+        {
+            throw new IllegalStateException(e);
+        }
+
+        return method.toByteArray();
+    }
+
+    private void writeShort(int value)
+    {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    private void writeInt(int value)
+    {
+        writeShort(value >>> 16);
+        writeShort(value & 0xFFFF);
+    }
+}
+
+/*
+Loads classes made by ClassFileWriter
+Every class gets its own loader, so classes with the same name can be loaded more than once,
+and each one can be garbage collected once nothing uses it anymore
+ */
+class GeneratedClassLoader extends ClassLoader
+{
+    public GeneratedClassLoader()
+    {
+        super(GeneratedClassLoader.class.getClassLoader());
+    }
+
+    public Class<?> define(ClassFileWriter classFile)
+    {
+        byte[] bytes = classFile.toByteArray();
+        return defineClass(classFile.getClassName().replace('/', '.'), bytes, 0, bytes.length);
+    }
+}
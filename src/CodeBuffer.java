@@ -0,0 +1,343 @@
+enum OpCode
+{
+    // The instructions of the 6502a along with how many bytes each one takes up (including operands),
+    // and how many cycles each one takes to run (BNE takes one more if it branches)
+    LDA_CONST (0xA9, 2, 2, "LDA #"),    // load the accumulator with a constant
+    LDA_MEM (0xAD, 3, 4, "LDA"),        // load the accumulator from memory
+    STA (0x8D, 3, 4, "STA"),            // store the accumulator in memory
+    ADC (0x6D, 3, 4, "ADC"),            // add a value in memory to the accumulator
+    LDX_CONST (0xA2, 2, 2, "LDX #"),    // load the X register with a constant
+    LDX_MEM (0xAE, 3, 4, "LDX"),        // load the X register from memory
+    LDY_CONST (0xA0, 2, 2, "LDY #"),    // load the Y register with a constant
+    LDY_MEM (0xAC, 3, 4, "LDY"),        // load the Y register from memory
+    NOP (0xEA, 1, 2, "NOP"),            // no operation
+    BRK (0x00, 1, 7, "BRK"),            // break (halt the program)
+    CPX (0xEC, 3, 4, "CPX"),            // compare a value in memory to the X register, setting Z if they are equal
+    BNE (0xD0, 2, 2, "BNE"),            // branch by a relative amount if Z is not set
+    INC (0xEE, 3, 6, "INC"),            // increment a value in memory
+    SYS (0xFF, 1, 6, "SYS");            // system call (print an int from Y if X is 1, or a string at Y if X is 2)
+
+    private final int code;
+    private final int size;
+    private final int cycles;
+    private final String mnemonic;
+
+    //maps each byte to the instruction with that op code (null if there isn't one)
+    private static final OpCode[] BY_CODE = new OpCode[256];
+
+    static
+    {
+        for(OpCode opCode : values())
+            BY_CODE[opCode.code] = opCode;
+    }
+
+    OpCode(int opCode, int bytes, int cycleCount, String name)
+    {
+        code = opCode;
+        size = bytes;
+        cycles = cycleCount;
+        mnemonic = name;
+    }
+
+    public int getCode()
+    {
+        return code;
+    }
+
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getCycles()
+    {
+        return cycles;
+    }
+
+    //returns the instruction with the given op code, or null if the byte is not an instruction
+    public static OpCode fromCode(int opCode)
+    {
+        return BY_CODE[opCode & 0xFF];
+    }
+
+    public String toString()
+    {
+        return mnemonic;
+    }
+}
+
+/*
+A growable buffer of 6502a machine code
+
+Code is kept as a list of instructions (an op code and its operand) until resolve() turns it into bytes,
+so optimizations can still change it after it is generated
+The operand of each instruction depends on its size:
+    1 byte instructions have no operand
+    2 byte instructions have a constant, except for BNE, which has the label it jumps to
+        constants from HEAP_STRING up are strings in the heap (HEAP_STRING + the string's index), whose address is filled in by resolve()
+    3 byte instructions have the slot of the variable they use, which is filled in with the variable's address by resolve()
+Labels are placed before an instruction, and the relative distance of each branch is filled in by resolve()
+Each instruction also keeps the source location it was generated for (see setSourceLocation()), which is used for profiling
+ */
+public class CodeBuffer
+{
+    //the first constant that refers to a string in the heap instead of being a byte
+    public static final int HEAP_STRING = 0x100;
+
+    //the instructions, as parallel arrays
+    private OpCode[] opCodes;
+    private int[] operands;
+    private Location[] locations;
+    private int count;
+
+    //the source location given to new instructions
+    private Location currentLocation;
+
+    //the index of the instruction each label was placed before (-1 if it hasn't been placed yet)
+    private int[] labelTargets;
+    private int labelCount;
+
+    //the number of bytes all the instructions take up
+    private int size;
+
+    //the machine code, and the address of each instruction (with one extra for the end of the code), only made by resolve()
+    private byte[] code;
+    private int[] addresses;
+
+    public CodeBuffer()
+    {
+        opCodes = new OpCode[32];
+        operands = new int[32];
+        locations = new Location[32];
+        count = 0;
+        currentLocation = null;
+
+        labelTargets = new int[8];
+        labelCount = 0;
+
+        size = 0;
+        code = new byte[0];
+        addresses = new int[1];
+    }
+
+    //returns the number of bytes of code written so far
+    public int size()
+    {
+        return size;
+    }
+
+    //writes a single byte instruction
+    public void emit(OpCode opCode)
+    {
+        add(opCode, 0);
+    }
+
+    //writes an instruction with a one byte constant (or a string in the heap, see HEAP_STRING)
+    public void emit(OpCode opCode, int constant)
+    {
+        add(opCode, constant < HEAP_STRING ? constant & 0xFF : constant);
+    }
+
+    //writes an instruction that refers to a variable, whose address is filled in by resolve()
+    //returns the reference so its slot can be changed later with setVariableSlot()
+    public int emitVariable(OpCode opCode, int slot)
+    {
+        add(opCode, slot);
+        return count - 1;
+    }
+
+    //changes which variable slot a reference made by emitVariable() refers to
+    public void setVariableSlot(int reference, int slot)
+    {
+        operands[reference] = slot;
+    }
+
+    //writes a branch to the given label, whose jump distance is filled in by resolve()
+    public void emitBranch(int label)
+    {
+        add(OpCode.BNE, label);
+    }
+
+    //makes a new label that hasn't been placed yet
+    public int newLabel()
+    {
+        if(labelCount == labelTargets.length)
+            labelTargets = grow(labelTargets);
+
+        labelTargets[labelCount] = -1;
+        labelCount++;
+
+        return labelCount - 1;
+    }
+
+    //sets the source location of the instructions written after this (until it is set again)
+    public void setSourceLocation(Location location)
+    {
+        currentLocation = location;
+    }
+
+    //places the label at the current end of the code
+    public void placeLabel(int label)
+    {
+        labelTargets[label] = count;
+    }
+
+    //turns the instructions into machine code, filling in every variable address, string address, and branch distance
+    //slotAddresses gives the address of each variable slot, and stringAddresses gives the address of each string in the heap
+    public void resolve(int[] slotAddresses, int[] stringAddresses)
+    {
+        //find where each instruction starts (with one extra for the end of the code, where a label can also be)
+        addresses = new int[count + 1];
+        for(int i = 0;i < count;i++)
+            addresses[i + 1] = addresses[i] + opCodes[i].getSize();
+
+        code = new byte[size];
+        for(int i = 0;i < count;i++)
+        {
+            int position = addresses[i];
+            code[position] = (byte) opCodes[i].getCode();
+
+            if(opCodes[i] == OpCode.BNE)
+            {
+                //the jump is relative to the end of the branch instruction, and wraps around memory
+                int distance = addresses[labelTargets[operands[i]]] - addresses[i + 1];
+                code[position + 1] = (byte) distance;
+            }
+            else if(opCodes[i].getSize() == 2)
+            {
+                if(operands[i] >= HEAP_STRING)
+                    code[position + 1] = (byte) stringAddresses[operands[i] - HEAP_STRING];
+                else
+                    code[position + 1] = (byte) operands[i];
+            }
+            else if(opCodes[i].getSize() == 3)
+            {
+                //addresses are little endian, and every variable is in the first page of memory, so the high byte is 00
+                code[position + 1] = (byte) slotAddresses[operands[i]];
+                code[position + 2] = 0x00;
+            }
+        }
+    }
+
+    //copies the code made by resolve() into the start of the given array
+    public void copyTo(byte[] destination)
+    {
+        System.arraycopy(code, 0, destination, 0, Math.min(code.length, destination.length));
+    }
+
+    //returns the address of the instruction (only valid after resolve())
+    public int getInstructionAddress(int instruction)
+    {
+        return addresses[instruction];
+    }
+
+    //returns the address the label was placed at (only valid after resolve())
+    public int getLabelAddress(int label)
+    {
+        return addresses[labelTargets[label]];
+    }
+
+    /*---------------------------------------- Instruction Access ----------------------------------------*/
+    //used by optimizations and profiling to look at and change the instructions
+
+    public int getInstructionCount()
+    {
+        return count;
+    }
+
+    public OpCode getOpCode(int instruction)
+    {
+        return opCodes[instruction];
+    }
+
+    public int getOperand(int instruction)
+    {
+        return operands[instruction];
+    }
+
+    //returns the source location the instruction was generated for (or null if none was set)
+    public Location getSourceLocation(int instruction)
+    {
+        return locations[instruction];
+    }
+
+    //replaces an instruction with another one
+    public void replace(int instruction, OpCode opCode, int operand)
+    {
+        size += opCode.getSize() - opCodes[instruction].getSize();
+        opCodes[instruction] = opCode;
+        operands[instruction] = operand;
+    }
+
+    //returns whether any branch jumps to each instruction (indexed by instruction, with one extra for the end of the code)
+    //labels that no branch uses (ex. ones only used to find where some code starts) don't count
+    public boolean[] findBranchTargets()
+    {
+        boolean[] targets = new boolean[count + 1];
+        for(int i = 0;i < count;i++)
+        {
+            if(opCodes[i] == OpCode.BNE)
+                targets[labelTargets[operands[i]]] = true;
+        }
+        return targets;
+    }
+
+    //removes every instruction marked in removed, moving labels to the next instruction that is kept
+    public void remove(boolean[] removed)
+    {
+        //newIndexes[i] is where instruction i ends up (or where the next kept instruction ends up, if it is removed)
+        int[] newIndexes = new int[count + 1];
+        int kept = 0;
+        for(int i = 0;i < count;i++)
+        {
+            newIndexes[i] = kept;
+            if(!removed[i])
+            {
+                opCodes[kept] = opCodes[i];
+                operands[kept] = operands[i];
+                locations[kept] = locations[i];
+                kept++;
+            }
+            else
+            {
+                size -= opCodes[i].getSize();
+            }
+        }
+        newIndexes[count] = kept;
+
+        for(int i = 0;i < labelCount;i++)
+        {
+            if(labelTargets[i] >= 0)
+                labelTargets[i] = newIndexes[labelTargets[i]];
+        }
+
+        count = kept;
+    }
+
+    private void add(OpCode opCode, int operand)
+    {
+        if(count == opCodes.length)
+        {
+            OpCode[] newOpCodes = new OpCode[opCodes.length * 2];
+            Location[] newLocations = new Location[locations.length * 2];
+            System.arraycopy(opCodes, 0, newOpCodes, 0, count);
+            System.arraycopy(locations, 0, newLocations, 0, count);
+            opCodes = newOpCodes;
+            locations = newLocations;
+            operands = grow(operands);
+        }
+
+        opCodes[count] = opCode;
+        operands[count] = operand;
+        locations[count] = currentLocation;
+        count++;
+        size += opCode.getSize();
+    }
+
+    private static int[] grow(int[] array)
+    {
+        int[] newArray = new int[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+    }
+}
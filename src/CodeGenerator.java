@@ -1,4 +1,4 @@
-import java.util.HashMap;
+import java.util.ArrayList;
 
 class CodeGenException extends Exception
 {
@@ -13,44 +13,96 @@ public class CodeGenerator
     //set the executable size
     private final int EXE_SIZE = 0x100;
 
-    private String[] executable;
+    private SyntaxTree ast; //the tree code is being generated for
+    private byte[] executable;
+    private CodeBuffer code;
     private BackpatchTable backpatchTable;
+    private int storageSize; //the number of bytes the variables take up
     private int heapStart;
     private int errors;
 
     // variable to handle boolean hell and the saving of many temp variables
     private int boolExprCount;
 
-    //maps a string to its starting location in the heap
-    private HashMap<String,String> heapStrings;
+    //the strings in the heap, which are only given addresses once all the code is generated
+    private StringHeap heap;
+
+    //the labels around every while loop, so the source map can find where each loop ended up
+    private ArrayList<LoopLabels> loops;
 
     private int programNum;
+    private final Log log;
+
+    //whether the generated code is run through the optimizations before it is put in the executable
+    private final boolean optimize;
 
-    public CodeGenerator()
+    //log is where all the messages from code generation are printed
+    public CodeGenerator(Log outputLog, boolean optimizeCode)
     {
+        log = outputLog;
+        optimize = optimizeCode;
         reset();
     }
 
     public void reset()
     {
-        //create the executable and default all to 00
-        executable = new String[EXE_SIZE];
-        for(int i = 0;i < executable.length;i++)
-            executable[i] = "00";
+        //create the executable (all 00 by default)
+        executable = new byte[EXE_SIZE];
+        code = new CodeBuffer();
 
         //create the backpatch table
-        backpatchTable = new BackpatchTable();
+        backpatchTable = new BackpatchTable(log);
 
         //set the start of the heap to the end of the executable
         heapStart = EXE_SIZE;
 
-        //create an empty hashmap for the heap
-        heapStrings = new HashMap<String, String>();
+        //create an empty heap
+        heap = new StringHeap();
+
+        loops = new ArrayList<LoopLabels>();
 
         //reset the number of errors
         errors = 0;
     }
 
+    public boolean hasError()
+    {
+        return errors > 0;
+    }
+
+    //returns where each byte of the executable came from in the source, and where each loop is (only valid if generation succeeded)
+    public SourceMap getSourceMap()
+    {
+        SourceMap sourceMap = new SourceMap(EXE_SIZE);
+
+        for(int i = 0;i < code.getInstructionCount();i++)
+        {
+            int address = code.getInstructionAddress(i);
+            sourceMap.setLocation(address, code.getOpCode(i).getSize(), code.getSourceLocation(i));
+        }
+
+        for(LoopLabels loop : loops)
+        {
+            sourceMap.addLoop(loop.getLocation(), code.getLabelAddress(loop.getStart()), code.getLabelAddress(loop.getBody()),
+                    code.getLabelAddress(loop.getEnd()));
+        }
+
+        return sourceMap;
+    }
+
+    //returns the executable (only filled in if generation succeeded)
+    public byte[] getExecutable()
+    {
+        return executable;
+    }
+
+    //returns how many bytes of the executable the program needs for its code, variables, and heap
+    //(this can be more than the size of the executable if it ran out of memory)
+    public int getBytesUsed()
+    {
+        return code.size() + storageSize + (EXE_SIZE - heapStart);
+    }
+
     public void tryCodeGeneration(SyntaxTree ast, int program, boolean hadPrevError)
     {
         //reset all the necessary values
@@ -62,12 +114,13 @@ public class CodeGenerator
         //before doing anything, if lex, parse, or semantic analysis had an error, skip code generation
         if(hadPrevError)
         {
-            System.out.println("Code Generation for Program " + program + " skipped due to previous errors");
+            log.message(LogLevel.INFO, "Code Generation for Program " + program + " skipped due to previous errors");
             errors++;
             return;
         }
 
-        System.out.println("INFO Code Generation - Generating code for program " + program);
+        if(log.isEnabled(LogLevel.INFO))
+            log.info("Code Generation", "Generating code for program " + program);
 
         try
         {
@@ -75,333 +128,474 @@ public class CodeGenerator
         }
         catch (CodeGenException e)
         {
-            System.out.println(e.getMessage());
+            log.message(LogLevel.ERROR, e.getMessage());
             errors++;
         }
 
         if(errors > 0)
         {
-            System.out.println("ERROR Code Generation - Generation failed with " + errors + " errors");
+            log.error("Code Generation", "Generation failed with " + errors + " errors");
         }
         else
         {
-            System.out.println("INFO Code Generation - Generation succeeded with " + errors + " errors");
+            if(log.isEnabled(LogLevel.INFO))
+                log.info("Code Generation", "Generation succeeded with " + errors + " errors");
         }
     }
 
+    //the text form of every byte, as it is printed in the executable
+    private static final String[] HEX_BYTES = new String[256];
+
+    static
+    {
+        for(int i = 0;i < HEX_BYTES.length;i++)
+            HEX_BYTES[i] = String.format("%02X ", i);
+    }
+
     public void printExecutable()
     {
         if(errors == 0)
         {
-            System.out.println("Executable:");
+            log.println("Executable:");
 
             for (int i = 0; i < executable.length; i++)
             {
-                System.out.print(executable[i] + " ");
+                log.print(HEX_BYTES[executable[i] & 0xFF]);
 
                 if (i % 8 == 7)
-                    System.out.println();
+                    log.println();
             }
         }
         else
-            System.out.println("Executable for Program " + programNum + " skipped due to previous errors");
+            log.println("Executable for Program " + programNum + " skipped due to previous errors");
     }
 
     /*-------------------------------------------- Code Gen Methods --------------------------------------------------*/
 
+
     private final String TEMP_ID = "temp";
 
-    private void generateProgram(SyntaxTree ast) throws CodeGenException
+    private void generateProgram(SyntaxTree programAST) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating Program Code");
+        ast = programAST;
+
+        log.debug("Code Gen", "Generating Program Code");
 
         //start the backpatch off with a temp storage value
         backpatchTable.findOrCreate(TEMP_ID, 0);
 
-        //start the heap off with true and false
-        addStringToHeap("true");
-        addStringToHeap("false");
+        //start the heap off with true and false (when optimizing they are only added if they are used)
+        if(!optimize)
+        {
+            addStringToHeap("true");
+            addStringToHeap("false");
+        }
 
         //start the boolExprCount at 0
         boolExprCount = 0;
 
         //the first child of the root is the first block in the program
-        //get the code in the form of a space delineated string and add a halt op code
-        String codeString = generateBlock(ast.getRoot().getChild(0)) + "00 ";
+        //generate the code and add a halt op code
+        generateBlock(ast.getFirstChild(ast.getRootIndex()));
+        code.setSourceLocation(ast.getLocation(ast.getRootIndex()));
+        code.emit(OpCode.BRK);
 
-        //turn the codeString into a usable array
-        String[] codeArray = codeString.split(" ");
+        //without optimizations every slot gets its own byte, in the order they were made
+        int[] storageOffsets = null;
+        storageSize = backpatchTable.size();
 
-        //if the combined length of the code and the backpatch is less than the heapStart, then no collisions occur
-        if(codeArray.length + backpatchTable.size() < heapStart)
+        if(optimize)
         {
-            System.out.println("DEBUG Code Gen - Backpatching variables");
+            int saved = new PeepholeOptimizer(code).optimize();
+            if(log.isEnabled(LogLevel.DEBUG))
+                log.debug("Code Gen", "Peephole optimization removed " + saved + " bytes");
+
+            //variables that are never alive at the same time share bytes
+            StorageAllocator allocator = new StorageAllocator(ast, backpatchTable, code);
+            allocator.allocate();
+            storageOffsets = allocator.getOffsets();
+            storageSize = allocator.getSize();
+            if(log.isEnabled(LogLevel.DEBUG))
+                log.debug("Code Gen", "Storing " + backpatchTable.size() + " variables in " + storageSize + " bytes");
+        }
 
-            //backpatch the table
-            backpatchTable.backpatch(codeArray.length);
+        //lay out the heap at the end of memory (when optimizing, strings the code doesn't use anymore are left out and ends of strings are shared)
+        heapStart = heap.layout(EXE_SIZE, findUsedStrings(), optimize);
 
-            //iterate through the code array to put it into the executable, backpatching along the way
-            for (int i = 0; i < codeArray.length; i++)
-            {
-                if (codeArray[i].startsWith("T"))
-                    executable[i] = backpatchTable.getBackpatchValue(codeArray[i]);
-                else
-                    executable[i] = codeArray[i];
-            }
+        //if the combined length of the code and the backpatch is less than the heapStart, then no collisions occur
+        if(code.size() + storageSize < heapStart)
+        {
+            log.debug("Code Gen", "Backpatching variables");
+
+            //backpatch the table, with the variables starting right after the code
+            if(storageOffsets == null)
+                backpatchTable.backpatch(code.size());
+            else
+                backpatchTable.backpatch(code.size(), storageOffsets);
+
+            //fill in all the variable addresses, string addresses, and jumps, then put the code and heap into the executable
+            code.resolve(backpatchTable.getAddresses(), heap.getAddresses());
+            code.copyTo(executable);
+            heap.copyTo(executable);
         }
         else
         {
-            System.out.println("ERROR Code Generation - Stack collided with Heap, ran out of memory");
+            log.error("Code Generation", "Stack collided with Heap, ran out of memory");
             errors++;
         }
     }
 
-    private String generateBlock(SyntaxTreeNode blockNode) throws CodeGenException
+    private void generateBlock(int blockNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating Block Code");
-
-        //generates the code in string form for easier concatenation of program lines
-        String codeString = "";
+        log.debug("Code Gen", "Generating Block Code");
 
-        for(SyntaxTreeNode child : blockNode.getChildren())
+        for(int child = ast.getFirstChild(blockNode);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
         {
-            switch (child.getNodeType())
+            //everything generated for the statement is mapped back to where it starts
+            code.setSourceLocation(ast.getLocation(child));
+
+            switch (ast.getNodeType(child))
             {
                 case PRINT_STATEMENT:
                 {
-                    codeString += generatePrint(child);
+                    generatePrint(child);
                     break;
                 }
                 case ASSIGNMENT_STATEMENT:
                 {
-                    codeString += generateAssignment(child);
+                    generateAssignment(child);
                     break;
                 }
                 case VAR_DECL:
                 {
-                    codeString += generateVarDecl(child);
+                    generateVarDecl(child);
                     break;
                 }
                 case WHILE_STATEMENT:
                 {
-                    codeString += generateWhile(child);
+                    generateWhile(child);
                     break;
                 }
                 case IF_STATEMENT:
                 {
-                    codeString += generateIf(child);
+                    generateIf(child);
                     break;
                 }
                 case BLOCK:
                 {
                     //recursively call the next block
-                    codeString += generateBlock(child);
+                    generateBlock(child);
                     break;
                 }
             }
         }
-
-        return codeString;
     }
 
-    private String generatePrint(SyntaxTreeNode printNode) throws CodeGenException
+    private void generatePrint(int printNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating Print Code");
-
-        String codeString = "";
+        log.debug("Code Gen", "Generating Print Code");
 
-        String printExpr = generateExpr(printNode.getChild(0));
+        Operand printExpr = generateExpr(ast.getChild(printNode, 0));
 
         //set the Y register
-        if(printExpr.length() == 3)
-            codeString += "A0 " + printExpr;
-        else if(printExpr.length() == 6)
-            codeString += "AC " + printExpr;
-        else
-            codeString += printExpr + "AC " + backpatchTable.findOrCreate(TEMP_ID, 0);
+        loadY(printExpr);
 
         //set the X register
-        if(printNode.getExprType() == SymbolType.INT)
-            codeString += "A2 01 ";
-        else if(printNode.getExprType() == SymbolType.STRING || printNode.getExprType() == SymbolType.BOOLEAN)
-            codeString += "A2 02 ";
+        if(ast.getExprType(printNode) == SymbolType.INT)
+            code.emit(OpCode.LDX_CONST, 0x01);
+        else if(ast.getExprType(printNode) == SymbolType.STRING || ast.getExprType(printNode) == SymbolType.BOOLEAN)
+            code.emit(OpCode.LDX_CONST, 0x02);
 
         //add the system call
-        codeString += "FF ";
-
-        return codeString;
+        code.emit(OpCode.SYS);
     }
 
-    private String generateAssignment(SyntaxTreeNode assignmentNode) throws CodeGenException
+    private void generateAssignment(int assignmentNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating Assignment Code");
+        log.debug("Code Gen", "Generating Assignment Code");
 
-        String codeString = "";
+        Operand id = generateExpr(ast.getChild(assignmentNode, 0));
+        Operand assignmentExpr = generateExpr(ast.getChild(assignmentNode, 1));
 
-        String idCode = generateExpr(assignmentNode.getChild(0));
-        String assignmentExpr = generateExpr(assignmentNode.getChild(1));
-
-        if(assignmentExpr.length() == 3)
-            codeString += "A9 " + assignmentExpr;
-        else if(assignmentExpr.length() == 6)
-            codeString += "AD " + assignmentExpr;
-        else
-            codeString += assignmentExpr + "AD " + backpatchTable.findOrCreate(TEMP_ID, 0);
-
-        codeString += "8D " + idCode;
-
-        return codeString;
+        loadAccumulator(assignmentExpr);
+        code.emitVariable(OpCode.STA, id.getValue());
     }
 
-    private String generateVarDecl(SyntaxTreeNode varDeclNode) throws CodeGenException
+    private void generateVarDecl(int varDeclNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating Var Decl Code");
-
-        String codeString = "";
+        log.debug("Code Gen", "Generating Var Decl Code");
 
-        String idCode = generateExpr(varDeclNode.getChild(1));
+        Operand id = generateExpr(ast.getChild(varDeclNode, 1));
 
-        if(varDeclNode.getExprType() == SymbolType.STRING)
+        if(ast.getExprType(varDeclNode) == SymbolType.STRING)
         {
             //var declaration of string (set to end of execution since it is guaranteed to be "00")
-            codeString += "A9 FF ";
+            code.emit(OpCode.LDA_CONST, 0xFF);
         }
-        else if(varDeclNode.getExprType() == SymbolType.BOOLEAN)
+        else if(ast.getExprType(varDeclNode) == SymbolType.BOOLEAN)
         {
             //var declaration of bool (set to "false" string in the heap)
-            codeString += "A9 " + addStringToHeap("false");
+            code.emit(OpCode.LDA_CONST, addStringToHeap("false"));
         }
         else
         {
             //var declaration of int (set to 0)
-            codeString += "A9 00 ";
+            code.emit(OpCode.LDA_CONST, 0x00);
         }
 
-        codeString += "8D " + idCode;
-
-        return codeString;
+        code.emitVariable(OpCode.STA, id.getValue());
     }
 
-    private String generateWhile(SyntaxTreeNode whileNode) throws CodeGenException
+    private void generateWhile(int whileNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating While Statement Code");
+        log.debug("Code Gen", "Generating While Statement Code");
+
+        int whileStart = code.newLabel();
+        int whileEnd = code.newLabel();
+        LoopLabels loop = new LoopLabels(ast.getLocation(whileNode), code.newLabel(), code.newLabel(), whileEnd);
+        loops.add(loop);
+        code.placeLabel(loop.getStart());
+
+        if(optimize)
+        {
+            int condition = ast.getChild(whileNode, 0);
+
+            if(ast.getNodeType(condition) == NodeType.INEQUALITY)
+            {
+                //an inequality can branch straight back to the block, so the condition is checked at the bottom of the loop
+                //and each time around the loop only runs the comparison, instead of the comparison and a jump
+                int whileCondition = code.newLabel();
+                jump(whileCondition);
+
+                code.placeLabel(whileStart);
+                code.placeLabel(loop.getBody());
+                generateBlock(ast.getChild(whileNode, 1));
+                code.setSourceLocation(ast.getLocation(whileNode));
+
+                code.placeLabel(whileCondition);
+                generateComparison(condition);
+                code.emitBranch(whileStart);
+            }
+            else
+            {
+                code.placeLabel(whileStart);
+                generateCondition(condition, whileEnd);
+                code.placeLabel(loop.getBody());
+                generateBlock(ast.getChild(whileNode, 1));
+                code.setSourceLocation(ast.getLocation(whileNode));
+                jump(whileStart);
+            }
+
+            code.placeLabel(whileEnd);
+            return;
+        }
 
-        String codeString = "";
+        code.placeLabel(whileStart);
 
-        String condition = generateExpr(whileNode.getChild(0));
-        String block = generateBlock(whileNode.getChild(1));
+        Operand condition = generateExpr(ast.getChild(whileNode, 0));
 
         //load the temp with the result of the condition
-        if(condition.length() == 3)
-            codeString += "A9 " + condition + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-        else if(condition.length() == 6)
-            codeString += "AD " + condition + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-        else
-            codeString += condition; //if the string is >6, then it's already stored in temp
+        storeInTemp(condition);
 
         //load x with true and compare with the value in temp
-        codeString += "A2 " + addStringToHeap("true");
-        codeString += "EC " + backpatchTable.findOrCreate(TEMP_ID, 0);
+        code.emit(OpCode.LDX_CONST, addStringToHeap("true"));
+        code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(TEMP_ID, 0));
 
-        //add unconditional jump at the end of the block
-        block += "A2 " + addStringToHeap("false"); //load x with false
-        block += "A9 " + addStringToHeap("true"); //load acc and temp with true
-        block += "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-        block += "EC " + backpatchTable.findOrCreate(TEMP_ID, 0) + "D0 "; //compare and jump (leaving off end number)
+        //jump over the block (and the jump back) if the condition is false
+        code.emitBranch(whileEnd);
 
-        //jump over the code size of the block (the plus 1 is account for not-yet-calculated backwards jump distance)
-        String blockSize = String.format("%2s", Integer.toString(block.length()/3 + 1, 16)).replace(' ', '0').toUpperCase();
-        codeString += "D0 " + blockSize + " ";
-        codeString += block;
+        code.placeLabel(loop.getBody());
+        generateBlock(ast.getChild(whileNode, 1));
+        code.setSourceLocation(ast.getLocation(whileNode));
 
-        //calculate size of entire while to add to the final jump backwards
-        int whileSize = codeString.length()/3 + 1;
-        String jump = String.format("%2s", Integer.toString(256-whileSize, 16)).replace(' ', '0').toUpperCase();
-        codeString += jump + " ";
+        //add unconditional jump at the end of the block
+        code.emit(OpCode.LDX_CONST, addStringToHeap("false")); //load x with false
+        code.emit(OpCode.LDA_CONST, addStringToHeap("true")); //load acc and temp with true
+        code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
+        code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(TEMP_ID, 0)); //compare and jump back to the start
+        code.emitBranch(whileStart);
 
-        return codeString;
+        code.placeLabel(whileEnd);
     }
 
-    private String generateIf(SyntaxTreeNode ifNode) throws CodeGenException
+    private void generateIf(int ifNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating If Statement Code");
+        log.debug("Code Gen", "Generating If Statement Code");
 
-        String codeString = "";
+        int ifEnd = code.newLabel();
 
-        String condition = generateExpr(ifNode.getChild(0));
-        String block = generateBlock(ifNode.getChild(1));
+        if(optimize)
+        {
+            generateCondition(ast.getChild(ifNode, 0), ifEnd);
+            generateBlock(ast.getChild(ifNode, 1));
+            code.placeLabel(ifEnd);
+            return;
+        }
+
+        Operand condition = generateExpr(ast.getChild(ifNode, 0));
 
         //load the temp with the result of the condition
-        if(condition.length() == 3)
-            codeString += "A9 " + condition + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-        else if(condition.length() == 6)
-            codeString += "AD " + condition + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-        else
-            codeString += condition; //if the string is >6, then it's already stored in temp
+        storeInTemp(condition);
 
         //load x with true and compare with the value in temp
-        codeString += "A2 " + addStringToHeap("true");
-        codeString += "EC " + backpatchTable.findOrCreate(TEMP_ID, 0);
+        code.emit(OpCode.LDX_CONST, addStringToHeap("true"));
+        code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(TEMP_ID, 0));
 
-        //jump over the code size of the block
-        String blockSize = String.format("%2s", Integer.toString(block.length()/3, 16)).replace(' ', '0').toUpperCase();
-        codeString += "D0 " + blockSize + " ";
-        codeString += block;
+        //jump over the block if the condition is false
+        code.emitBranch(ifEnd);
 
-        return codeString;
+        generateBlock(ast.getChild(ifNode, 1));
+
+        code.placeLabel(ifEnd);
+    }
+
+    /*
+    Generates code that falls through to the next instruction if the condition is true, and jumps to falseLabel if it is false
+    Comparisons branch straight on the result of CPX, so the "true"/"false" value is never made
+        ==  compare, then BNE falseLabel
+        !=  compare, then BNE over a jump to falseLabel
+    Anything else (a literal, or an expression made in a way this doesn't know) is compared against "true"
+     */
+    private void generateCondition(int conditionNode, int falseLabel) throws CodeGenException
+    {
+        switch(ast.getNodeType(conditionNode))
+        {
+            case EQUALITY:
+            {
+                generateComparison(conditionNode);
+                code.emitBranch(falseLabel);
+                return;
+            }
+            case INEQUALITY:
+            {
+                int conditionTrue = code.newLabel();
+                generateComparison(conditionNode);
+                code.emitBranch(conditionTrue);
+                jump(falseLabel);
+                code.placeLabel(conditionTrue);
+                return;
+            }
+        }
+
+        Token token = ast.getToken(conditionNode);
+        if(token != null && token.getType() == TokenType.BOOL_VAL)
+        {
+            //a literal condition doesn't need to be checked at all
+            if(token.getValue().equals("false"))
+                jump(falseLabel);
+            return;
+        }
+
+        Operand condition = generateExpr(conditionNode);
+        storeInTemp(condition);
+        code.emit(OpCode.LDX_CONST, addStringToHeap("true"));
+        code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(TEMP_ID, 0));
+        code.emitBranch(falseLabel);
+    }
+
+    //generates the two sides of an equality or inequality and compares them, so Z is set iff they are equal
+    private void generateComparison(int comparisonNode) throws CodeGenException
+    {
+        boolExprCount++;
+
+        Operand firstHalf = generateExpr(ast.getChild(comparisonNode, 0));
+
+        //the second half might use temp, so a first half in temp is moved to its own slot first
+        if(firstHalf.getKind() == Operand.Kind.TEMP)
+        {
+            int boolSlot = backpatchTable.findOrCreate("bool" + boolExprCount, 0);
+            code.emitVariable(OpCode.LDA_MEM, backpatchTable.findOrCreate(TEMP_ID, 0));
+            code.emitVariable(OpCode.STA, boolSlot);
+            firstHalf = Operand.variable(boolSlot);
+        }
+
+        Operand secondHalf = generateExpr(ast.getChild(comparisonNode, 1));
+
+        //CPX can only compare with memory, so if either half is a constant it goes in X (the order doesn't matter)
+        if(secondHalf.getKind() == Operand.Kind.CONSTANT)
+        {
+            Operand swap = firstHalf;
+            firstHalf = secondHalf;
+            secondHalf = swap;
+        }
+        if(secondHalf.getKind() == Operand.Kind.CONSTANT)
+            storeInTemp(secondHalf);
+
+        if(firstHalf.getKind() == Operand.Kind.CONSTANT)
+            code.emit(OpCode.LDX_CONST, firstHalf.getValue());
+        else
+            code.emitVariable(OpCode.LDX_MEM, firstHalf.getValue());
+
+        if(secondHalf.getKind() == Operand.Kind.VARIABLE)
+            code.emitVariable(OpCode.CPX, secondHalf.getValue());
+        else
+            code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(TEMP_ID, 0));
+
+        boolExprCount--;
+    }
+
+    //the id of a variable that is never stored to, so it is always 00 (used for jumps)
+    private final String ZERO_ID = "zero";
+
+    //jumps to the label no matter what
+    //the 6502a only has BNE, so X is loaded with 1 and compared with a variable that is always 0 to clear Z
+    private void jump(int label)
+    {
+        code.emit(OpCode.LDX_CONST, 0x01);
+        code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(ZERO_ID, 0));
+        code.emitBranch(label);
     }
 
     /*
     Generates code for all expressions, including those that are single symbols/ids/strings
     This method handles all temporary backpatch values
 
-    This method returns String lengths of 3 different sizes
-    Length 3 - this means some int or bool literal (ex. "9", "4", "true")
-    Length 6 - this means a memory address for an id (ex. "a")
-    Length >6 - this means some kind of expression that saves its result in the TEMP_ID location
+    This method returns one of three kinds of operands (see Operand below)
+    CONSTANT - some int or bool literal, or the heap location of a string (ex. "9", "4", "true"), no code is generated
+    VARIABLE - the slot of an id (ex. "a"), no code is generated
+    TEMP - some kind of expression that generated code to save its result in the TEMP_ID location
      */
-    private String generateExpr(SyntaxTreeNode exprNode) throws CodeGenException
+    private Operand generateExpr(int exprNode) throws CodeGenException
     {
-        System.out.println("DEBUG Code Gen - Generating Expression Code");
-
-        String codeString = "";
+        log.debug("Code Gen", "Generating Expression Code");
 
         //set a bool to true here so that the equality and inequality cases can share code except for one statement
         boolean equality = true;
 
-        switch(exprNode.getNodeType())
+        switch(ast.getNodeType(exprNode))
         {
             case ADDITION:
             {
                 //get both halves of the expression
-                String firstHalf = generateExpr(exprNode.getChild(0));
-                String secondHalf = generateExpr(exprNode.getChild(1));
+                //the first half is guaranteed to be a single digit, so it never generates code
+                Operand firstHalf = generateExpr(ast.getChild(exprNode, 0));
+                Operand secondHalf = generateExpr(ast.getChild(exprNode, 1));
 
-                if(secondHalf.length() == 3)
+                if(secondHalf.getKind() == Operand.Kind.CONSTANT)
                 {
                     //if the second half is a literal, first save it into the temp location, then load the first half and add the temp
-                    codeString += "A9 " + secondHalf + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-                    codeString += "A9 " + firstHalf; //the first half is guaranteed to be a single digit
-                    codeString += "6D " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                    code.emit(OpCode.LDA_CONST, secondHalf.getValue());
+                    code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
+                    code.emit(OpCode.LDA_CONST, firstHalf.getValue());
+                    code.emitVariable(OpCode.ADC, backpatchTable.findOrCreate(TEMP_ID, 0));
                 }
-                else if(secondHalf.length() == 6)
+                else if(secondHalf.getKind() == Operand.Kind.VARIABLE)
                 {
-                    //if the length is 6 (an id) just load the first half and add the id
-                    codeString += "A9 " + firstHalf; //the first half is guaranteed to be a single digit
-                    codeString += "6D " + secondHalf;
+                    //if the second half is an id, just load the first half and add the id
+                    code.emit(OpCode.LDA_CONST, firstHalf.getValue());
+                    code.emitVariable(OpCode.ADC, secondHalf.getValue());
                 }
                 else
                 {
-                    //if the length is not an id (saved into temp), add the second half op codes, load the first half, and add the temp
-                    codeString += secondHalf;
-                    codeString += "A9 " + firstHalf; //the first half is guaranteed to be a single digit
-                    codeString += "6D " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                    //if the second half was saved into temp (its code is already generated), load the first half and add the temp
+                    code.emit(OpCode.LDA_CONST, firstHalf.getValue());
+                    code.emitVariable(OpCode.ADC, backpatchTable.findOrCreate(TEMP_ID, 0));
                 }
 
                 //save the result back into temp
-                codeString += "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
 
-                break;
+                return Operand.temp();
             }
             case INEQUALITY:
             {
@@ -413,80 +607,73 @@ public class CodeGenerator
                 boolExprCount++; //increase the count for this iteration of bool expression
                 //if(exprNode.getParent().getNodeType() == NodeType.EQUALITY ||
                         //exprNode.getParent().getNodeType() == NodeType.INEQUALITY)
-                    //throw new CodeGenException("ERROR Code Generation - Nested Booleans not supported");
-
-                String firstHalf = generateExpr(exprNode.getChild(0));
-                String secondHalf = generateExpr(exprNode.getChild(1));
+                    //throw new CodeGenException("Nested Booleans not supported");
 
                 //load accumulator with the result of the first expression
-                if(firstHalf.length() == 3)
-                    codeString += "A9 " + firstHalf;
-                else if(firstHalf.length() == 6)
-                    codeString += "AD " + firstHalf;
-                else
-                    codeString += firstHalf + "AD " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                Operand firstHalf = generateExpr(ast.getChild(exprNode, 0));
+                loadAccumulator(firstHalf);
 
                 //save the value into a temp value based upon how many bool expressions have been nested
-                codeString += "8D " + backpatchTable.findOrCreate("bool" + boolExprCount, 0); //its a temp, so no need to worry about scope
+                //the slot is only made after the second expression, so any nested bool temps are made first
+                int boolStore = code.emitVariable(OpCode.STA, -1);
 
                 //load the temp with the result of the second expression
-                if(secondHalf.length() == 3)
-                    codeString += "A9 " + secondHalf + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-                else if(secondHalf.length() == 6)
-                    codeString += "AD " + secondHalf + "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
-                else
-                    codeString += secondHalf; //if the string is >6, then it's already stored in temp
+                Operand secondHalf = generateExpr(ast.getChild(exprNode, 1));
+                code.setVariableSlot(boolStore, backpatchTable.findOrCreate("bool" + boolExprCount, 0)); //its a temp, so no need to worry about scope
+                storeInTemp(secondHalf);
 
                 //load x with the temp from the first value
-                codeString += "AE " + backpatchTable.findOrCreate("bool" + boolExprCount, 0);
+                code.emitVariable(OpCode.LDX_MEM, backpatchTable.findOrCreate("bool" + boolExprCount, 0));
 
                 //perform the comparison
-                codeString += "EC " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                code.emitVariable(OpCode.CPX, backpatchTable.findOrCreate(TEMP_ID, 0));
 
                 //add the appropriate true/false value into temp
                 if(equality)
                 {
                     //starts with "false" in the acc. if not equal, jumps over the change to "true"
-                    codeString += "A9 " + addStringToHeap("false");
-                    codeString += "D0 02 ";
-                    codeString += "A9 " + addStringToHeap("true");
-                    codeString += "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                    int notEqual = code.newLabel();
+                    code.emit(OpCode.LDA_CONST, addStringToHeap("false"));
+                    code.emitBranch(notEqual);
+                    code.emit(OpCode.LDA_CONST, addStringToHeap("true"));
+                    code.placeLabel(notEqual);
+                    code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
                 }
                 else
                 {
                     //opposite of above
-                    codeString += "A9 " + addStringToHeap("true");
-                    codeString += "D0 02 ";
-                    codeString += "A9 " + addStringToHeap("false");
-                    codeString += "8D " + backpatchTable.findOrCreate(TEMP_ID, 0);
+                    int notEqual = code.newLabel();
+                    code.emit(OpCode.LDA_CONST, addStringToHeap("true"));
+                    code.emitBranch(notEqual);
+                    code.emit(OpCode.LDA_CONST, addStringToHeap("false"));
+                    code.placeLabel(notEqual);
+                    code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
                 }
 
                 boolExprCount--; //decrease the count for this iteration of bool expression
 
-                break;
+                return Operand.temp();
             }
             case TERMINAL:
             {
                 //TERMINAL means this is a leaf node and has a token
-                Token token = exprNode.getToken();
+                Token token = ast.getToken(exprNode);
 
-                //add the appropriate op codes to the code string
+                //return the appropriate operand for the token
                 switch(token.getType())
                 {
                     case DIGIT:
                     {
-                        //add 0 padded digit (since literal ints can be only 1 digit)
-                        codeString += "0" + token.getValue() + " ";
-                        break;
+                        //literal ints are only 1 digit
+                        return Operand.constant(Integer.parseInt(token.getValue()));
                     }
                     case BOOL_VAL:
                     {
                         //add the locations of strings "true" and "false" from the heap
                         if(token.getValue().equals("true"))
-                            codeString += addStringToHeap("true");
+                            return Operand.constant(addStringToHeap("true"));
                         else
-                            codeString += addStringToHeap("false");
-                        break;
+                            return Operand.constant(addStringToHeap("false"));
                     }
                     case STRING:
                     {
@@ -494,13 +681,11 @@ public class CodeGenerator
                         String quotedString = token.getValue();
                         String fixedString = quotedString.substring(1, quotedString.length()-1);
 
-                        codeString += addStringToHeap(fixedString);
-                        break;
+                        return Operand.constant(addStringToHeap(fixedString));
                     }
                     case ID:
                     {
-                        codeString += backpatchTable.findOrCreate(token.getValue(), token.getScope());
-                        break;
+                        return Operand.variable(backpatchTable.findOrCreate(token.getValue(), token.getScope()));
                     }
                 }
 
@@ -508,34 +693,156 @@ public class CodeGenerator
             }
         }
 
-        return codeString;
+        throw new CodeGenException("Unexpected expression " + ast.getLabel(exprNode) + " at " + ast.getLocation(exprNode));
     }
 
-    private String addStringToHeap(String s)
+    //loads the accumulator with the value of an expression
+    private void loadAccumulator(Operand value)
     {
-        String stringLoc = heapStrings.get(s);
+        if(value.getKind() == Operand.Kind.CONSTANT)
+            code.emit(OpCode.LDA_CONST, value.getValue());
+        else if(value.getKind() == Operand.Kind.VARIABLE)
+            code.emitVariable(OpCode.LDA_MEM, value.getValue());
+        else
+            code.emitVariable(OpCode.LDA_MEM, backpatchTable.findOrCreate(TEMP_ID, 0));
+    }
+
+    //loads the Y register with the value of an expression
+    private void loadY(Operand value)
+    {
+        if(value.getKind() == Operand.Kind.CONSTANT)
+            code.emit(OpCode.LDY_CONST, value.getValue());
+        else if(value.getKind() == Operand.Kind.VARIABLE)
+            code.emitVariable(OpCode.LDY_MEM, value.getValue());
+        else
+            code.emitVariable(OpCode.LDY_MEM, backpatchTable.findOrCreate(TEMP_ID, 0));
+    }
 
-        //if the string is not already in the heap, add it
-        if(stringLoc == null)
+    //makes sure the value of an expression is in the temp location (if it is TEMP, it is already there)
+    private void storeInTemp(Operand value)
+    {
+        if(value.getKind() == Operand.Kind.CONSTANT)
+        {
+            code.emit(OpCode.LDA_CONST, value.getValue());
+            code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
+        }
+        else if(value.getKind() == Operand.Kind.VARIABLE)
         {
-            System.out.println("DEBUG Code Gen - Adding \"" + s + "\" to the heap");
+            code.emitVariable(OpCode.LDA_MEM, value.getValue());
+            code.emitVariable(OpCode.STA, backpatchTable.findOrCreate(TEMP_ID, 0));
+        }
+    }
 
-            //modify the heap start (-1 for the 00 at the end of the string)
-            heapStart = heapStart - s.length() - 1;
+    //adds the string to the heap if it is not already there, and returns the operand that refers to it
+    //(its address is filled in when the code is resolved, after the heap is laid out)
+    private int addStringToHeap(String s)
+    {
+        if(!heap.contains(s) && log.isEnabled(LogLevel.DEBUG))
+            log.debug("Code Gen", "Adding \"" + s + "\" to the heap");
 
-            //if heap start ends up < 0, check and break out of the for loop
-            //let the error be handled at the end when the heap size is checked against the code and stack size
+        return CodeBuffer.HEAP_STRING + heap.add(s);
+    }
 
-            //add each character to the executable using ASCII char conversion and in base 16
-            for(int i = 0;i < s.length() && heapStart >= 0;i++)
-                executable[heapStart + i] = Integer.toString(s.charAt(i), 16).toUpperCase();
+    //returns whether any instruction still refers to each string in the heap
+    private boolean[] findUsedStrings()
+    {
+        boolean[] used = new boolean[heap.size()];
+        for(int i = 0;i < code.getInstructionCount();i++)
+        {
+            if(code.getOperand(i) >= CodeBuffer.HEAP_STRING && code.getOpCode(i).getSize() == 2 && code.getOpCode(i) != OpCode.BNE)
+                used[code.getOperand(i) - CodeBuffer.HEAP_STRING] = true;
+        }
+        return used;
+    }
+}
 
-            //add the string to the hash map
-            heapStrings.put(s, Integer.toString(heapStart, 16).toUpperCase());
+/*
+What an expression turned into after its code was generated
+ */
+class Operand
+{
+    public enum Kind
+    {
+        CONSTANT,   // the value is a constant (a literal or a heap location)
+        VARIABLE,   // the value is in a variable, and the value of the operand is the variable's slot
+        TEMP        // the value was saved into the temp location by the code generated for the expression
+    }
 
-            stringLoc = heapStrings.get(s);
-        }
+    private static final Operand TEMP = new Operand(Kind.TEMP, 0);
+
+    private final Kind kind;
+    private final int value;
+
+    private Operand(Kind operandKind, int operandValue)
+    {
+        kind = operandKind;
+        value = operandValue;
+    }
+
+    public static Operand constant(int value)
+    {
+        return new Operand(Kind.CONSTANT, value);
+    }
+
+    public static Operand variable(int slot)
+    {
+        return new Operand(Kind.VARIABLE, slot);
+    }
+
+    public static Operand temp()
+    {
+        return TEMP;
+    }
+
+    public Kind getKind()
+    {
+        return kind;
+    }
+
+    public int getValue()
+    {
+        return value;
+    }
+}
 
-        return stringLoc + " ";
+/*
+The labels placed around a while loop while its code is generated
+    start   before the first instruction of the loop
+    body    before the first instruction of the loop's block
+    end     after the last instruction of the loop
+ */
+class LoopLabels
+{
+    private final Location location;
+    private final int start;
+    private final int body;
+    private final int end;
+
+    public LoopLabels(Location loopLocation, int startLabel, int bodyLabel, int endLabel)
+    {
+        location = loopLocation;
+        start = startLabel;
+        body = bodyLabel;
+        end = endLabel;
+    }
+
+    public Location getLocation()
+    {
+        return location;
     }
-}
\ No newline at end of file
+
+    public int getStart()
+    {
+        return start;
+    }
+
+    public int getBody()
+    {
+        return body;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+}
@@ -0,0 +1,582 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/*
+A cache on disk of compiled programs, so a program that hasn't changed since the last run doesn't go through
+the Parser, SemanticAnalyzer, and CodeGenerator again (-cache=<dir>)
+
+Each program is stored in its own file, named by the SHA-256 of
+    the version of the compiler (a hash of its class files, so rebuilding a changed compiler misses every old entry)
+    the options and log settings, since they change what is printed
+    whether lexing had an error, and the type and value of every token
+The file holds everything compile() printed for the program, the executable (if generation succeeded),
+and the program number and token positions it was compiled with
+
+Where the program is in the file isn't part of the key, so adding a line or a program above it still hits
+The output is moved to the new place when it is read
+    every position printed is the position of a token, as (line:column), so each is changed to where that token is now
+    every program number is printed as "Program <num>" (or "program <num>"), so those are changed to the new number
+    the program's own output (the "Output:" lines) is never changed
+An entry whose output has anything else that depends on where the program is (ex. the line numbers in a profile,
+or a position that isn't a token's) is only used for a program in exactly the same place
+
+Several compiler processes can share one directory
+    entries are written to a temporary file and then renamed into place, so a reader never sees half of an entry
+    two processes writing the same entry write the same thing, so it doesn't matter which rename wins
+    an entry that can't be read (ex. it was evicted while being opened) is just a miss,
+    and an entry that is read but isn't valid is deleted
+
+Every entry that is read has its modified time updated, and once the directory is over its size limit,
+the entries that were used least recently are deleted until it fits again
+Only one process evicts at a time (it holds a lock on the lock file), and the others skip it
+ */
+public class CompilationCache
+{
+    //the start of every entry, so a file that isn't an entry (or is from an older format) is a miss
+    private static final int MAGIC = 0x43434832;
+
+    private static final String ENTRY_SUFFIX = ".entry";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String LOCK_FILE = "cache.lock";
+
+    //temporary files older than this were left by a process that died while writing them
+    private static final long STALE_TEMP_MILLIS = 60 * 60 * 1000;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    //how positions and program numbers look in the output
+    private static final Pattern POSITION = Pattern.compile("\\((\\d+):(\\d+)\\)");
+    private static final Pattern PROGRAM_NUMBER = Pattern.compile("([Pp]rogram )(\\d+)");
+
+    //lines that are the program's own output, which are never changed
+    private static final String[] OUTPUT_PREFIXES = {"Output: ", "JVM Output: "};
+
+    //the version is the same for the whole run, so it is only worked out once
+    private static String compilerVersion;
+
+    private final Path directory;
+    private final long maxBytes;
+
+    public CompilationCache(Path cacheDirectory, long maxSize) throws IOException
+    {
+        directory = cacheDirectory;
+        maxBytes = maxSize;
+        Files.createDirectories(directory);
+    }
+
+    //returns the key of a lexed program compiled with the given options and printed to the given log
+    public String makeKey(TokenBuffer tokens, boolean lexError, CompilerOptions options, Log log)
+    {
+        MessageDigest digest = newDigest();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        try
+        {
+            out.writeUTF(getCompilerVersion());
+            out.writeBoolean(options.optimizeCode());
+            out.writeBoolean(options.runExecutables());
+            out.writeBoolean(options.profileExecutables());
+            out.writeBoolean(options.translateExecutables());
+            out.writeBoolean(options.compileToJvm());
+            out.writeUTF(log.getLevel().name());
+            out.writeBoolean(log.isCompact());
+            out.writeBoolean(lexError);
+
+            out.writeInt(tokens.size());
+            for(int i = 0;i < tokens.size();i++)
+            {
+                out.writeByte(tokens.getType(i).ordinal());
+
+                //written as bytes with the length first, so values can't run into each other
+                byte[] value = tokens.getValue(i).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(value.length);
+                out.write(value);
+
+                //keep the buffer small for big programs
+                if(bytes.size() > 8192)
+                {
+                    digest.update(bytes.toByteArray());
+                    bytes.reset();
+                }
+            }
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            //writing to a ByteArrayOutputStream never fails
+            throw new IllegalStateException(e);
+        }
+
+        digest.update(bytes.toByteArray());
+        return toHex(digest.digest());
+    }
+
+    //returns the cached program with the key, moved to the given program number and token positions,
+    //or null if it isn't in the cache (or can't be moved there)
+    public CachedProgram get(String key, TokenBuffer tokens, int programNum)
+    {
+        Path entry = directory.resolve(key + ENTRY_SUFFIX);
+        byte[] bytes;
+        try
+        {
+            bytes = Files.readAllBytes(entry);
+        }
+        catch(IOException e)
+        {
+            //missing or evicted, which are misses
+            return null;
+        }
+
+        CachedEntry cached = parseEntry(ByteBuffer.wrap(bytes));
+        if(cached == null || cached.lines.length != tokens.size())
+        {
+            //cut off, corrupt, or from a different program with the same hash
+            deleteQuietly(entry);
+            return null;
+        }
+
+        String output = moveOutput(cached, tokens, programNum);
+        if(output == null)
+            return null;
+
+        //mark the entry as just used, so it is evicted last
+        try
+        {
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+        }
+        catch(IOException e)
+        {
+            //evicted since it was read, but what was read is still right
+        }
+
+        return new CachedProgram(output, cached.executable);
+    }
+
+    //reads an entry, returning null if it isn't valid (every length is checked against what is left, so a bad one can't
+    //make a huge or negative array)
+    private static CachedEntry parseEntry(ByteBuffer in)
+    {
+        try
+        {
+            if(in.getInt() != MAGIC)
+                return null;
+
+            CachedEntry entry = new CachedEntry();
+            entry.programNum = in.getInt();
+            entry.exactOnly = in.get() != 0;
+
+            int tokenCount = in.getInt();
+            if(tokenCount < 0 || tokenCount > in.remaining() / 8)
+                return null;
+            entry.lines = new int[tokenCount];
+            entry.columns = new int[tokenCount];
+            for(int i = 0;i < tokenCount;i++)
+            {
+                entry.lines[i] = in.getInt();
+                entry.columns[i] = in.getInt();
+            }
+
+            int executableLength = in.getInt();
+            if(executableLength < -1 || executableLength > in.remaining())
+                return null;
+            if(executableLength >= 0)
+            {
+                entry.executable = new byte[executableLength];
+                in.get(entry.executable);
+            }
+
+            int outputLength = in.getInt();
+            if(outputLength < 0 || outputLength != in.remaining())
+                return null;
+            byte[] output = new byte[outputLength];
+            in.get(output);
+            entry.output = new String(output, StandardCharsets.UTF_8);
+
+            return entry;
+        }
+        catch(BufferUnderflowException e)
+        {
+            return null;
+        }
+    }
+
+    //returns the output of the entry changed to the new program number and token positions,
+    //or null if it can't be moved there
+    private static String moveOutput(CachedEntry cached, TokenBuffer tokens, int programNum)
+    {
+        boolean samePlace = cached.programNum == programNum;
+        for(int i = 0;i < tokens.size() && samePlace;i++)
+            samePlace = cached.lines[i] == tokens.getLine(i) && cached.columns[i] == tokens.getColumn(i);
+
+        if(samePlace)
+            return cached.output;
+        if(cached.exactOnly)
+            return null;
+
+        //where each token was when the entry was made, to where it is now
+        HashMap<String, String> positions = new HashMap<String, String>();
+        for(int i = 0;i < tokens.size();i++)
+            positions.put("(" + cached.lines[i] + ":" + cached.columns[i] + ")", tokens.getLocation(i).toString());
+
+        StringBuilder moved = new StringBuilder(cached.output.length() + 16);
+        int lineStart = 0;
+        while(lineStart < cached.output.length())
+        {
+            int lineEnd = cached.output.indexOf('\n', lineStart) + 1;
+            if(lineEnd == 0)
+                lineEnd = cached.output.length();
+            String line = cached.output.substring(lineStart, lineEnd);
+            lineStart = lineEnd;
+
+            if(isProgramOutput(line))
+            {
+                moved.append(line);
+                continue;
+            }
+
+            Matcher position = POSITION.matcher(line);
+            StringBuilder movedLine = new StringBuilder(line.length() + 8);
+            while(position.find())
+            {
+                String newPosition = positions.get(position.group());
+                if(newPosition == null)
+                    return null;
+                position.appendReplacement(movedLine, newPosition);
+            }
+            position.appendTail(movedLine);
+
+            Matcher program = PROGRAM_NUMBER.matcher(movedLine);
+            movedLine = new StringBuilder(movedLine.length() + 4);
+            while(program.find())
+                program.appendReplacement(movedLine, "$1" + programNum);
+            program.appendTail(movedLine);
+
+            moved.append(movedLine);
+        }
+
+        return moved.toString();
+    }
+
+    //returns true if the line of output is what the program itself printed
+    private static boolean isProgramOutput(String line)
+    {
+        for(String prefix : OUTPUT_PREFIXES)
+        {
+            if(line.startsWith(prefix))
+                return true;
+        }
+        return false;
+    }
+
+    //returns true if everything in the output that depends on where the program is can be moved by moveOutput()
+    private static boolean canMove(String output, TokenBuffer tokens, int programNum)
+    {
+        HashSet<String> positions = new HashSet<String>();
+        for(int i = 0;i < tokens.size();i++)
+            positions.add(tokens.getLocation(i).toString());
+
+        int lineStart = 0;
+        while(lineStart < output.length())
+        {
+            int lineEnd = output.indexOf('\n', lineStart) + 1;
+            if(lineEnd == 0)
+                lineEnd = output.length();
+            String line = output.substring(lineStart, lineEnd);
+            lineStart = lineEnd;
+
+            if(isProgramOutput(line))
+                continue;
+
+            Matcher position = POSITION.matcher(line);
+            while(position.find())
+            {
+                if(!positions.contains(position.group()))
+                    return false;
+            }
+
+            Matcher program = PROGRAM_NUMBER.matcher(line);
+            while(program.find())
+            {
+                if(!program.group(2).equals(Integer.toString(programNum)))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    //adds a compiled program to the cache (executable is null if generation failed), and evicts entries if it is too big
+    //movable is false if the output depends on where the program is in ways moveOutput() can't change
+    public void put(String key, TokenBuffer tokens, int programNum, String output, byte[] executable, boolean movable)
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Path temp = null;
+
+        try
+        {
+            out.writeInt(MAGIC);
+            out.writeInt(programNum);
+            out.writeBoolean(!movable || !canMove(output, tokens, programNum));
+            out.writeInt(tokens.size());
+            for(int i = 0;i < tokens.size();i++)
+            {
+                out.writeInt(tokens.getLine(i));
+                out.writeInt(tokens.getColumn(i));
+            }
+
+            if(executable == null)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                out.writeInt(executable.length);
+                out.write(executable);
+            }
+
+            byte[] outputBytes = output.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(outputBytes.length);
+            out.write(outputBytes);
+            out.flush();
+
+            temp = Files.createTempFile(directory, key, TEMP_SUFFIX);
+            Files.write(temp, bytes.toByteArray());
+            Files.move(temp, directory.resolve(key + ENTRY_SUFFIX), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+        }
+        catch(IOException e)
+        {
+            //the cache is only there to save time, so a program that can't be cached is just compiled again next time
+            return;
+        }
+        finally
+        {
+            deleteQuietly(temp);
+        }
+
+        evict();
+    }
+
+    //deletes the least recently used entries until the cache fits in its size limit
+    private synchronized void evict()
+    {
+        try(FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE))
+        {
+            //another process is already evicting
+            FileLock lock = lockChannel.tryLock();
+            if(lock == null)
+                return;
+
+            try
+            {
+                evictEntries();
+            }
+            finally
+            {
+                lock.release();
+            }
+        }
+        catch(IOException | OverlappingFileLockException e)
+        {
+            //eviction is tried again after the next put
+        }
+    }
+
+    private void evictEntries() throws IOException
+    {
+        ArrayList<Path> entries = new ArrayList<Path>();
+        ArrayList<Long> times = new ArrayList<Long>();
+        ArrayList<Long> sizes = new ArrayList<Long>();
+        long totalSize = 0;
+        long now = System.currentTimeMillis();
+
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory))
+        {
+            for(Path file : files)
+            {
+                String name = file.getFileName().toString();
+                try
+                {
+                    if(name.endsWith(ENTRY_SUFFIX))
+                    {
+                        long size = Files.size(file);
+                        entries.add(file);
+                        times.add(Files.getLastModifiedTime(file).toMillis());
+                        sizes.add(size);
+                        totalSize += size;
+                    }
+                    else if(name.endsWith(TEMP_SUFFIX) && now - Files.getLastModifiedTime(file).toMillis() > STALE_TEMP_MILLIS)
+                    {
+                        deleteQuietly(file);
+                    }
+                }
+                catch(NoSuchFileException e)
+                {
+                    //deleted by another process while looking through the directory
+                }
+            }
+        }
+
+        if(totalSize <= maxBytes)
+            return;
+
+        //oldest first
+        Integer[] order = new Integer[entries.size()];
+        for(int i = 0;i < order.length;i++)
+            order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(times.get(a), times.get(b)));
+
+        for(int i = 0;i < order.length && totalSize > maxBytes;i++)
+        {
+            deleteQuietly(entries.get(order[i]));
+            totalSize -= sizes.get(order[i]);
+        }
+    }
+
+    //returns a hash of the class files the compiler is running from, or "unknown" if they can't be found
+    private static synchronized String getCompilerVersion()
+    {
+        if(compilerVersion != null)
+            return compilerVersion;
+
+        compilerVersion = "unknown";
+        try
+        {
+            Path location = Path.of(CompilationCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            MessageDigest digest = newDigest();
+
+            if(Files.isDirectory(location))
+            {
+                ArrayList<Path> classFiles = new ArrayList<Path>();
+                try(DirectoryStream<Path> files = Files.newDirectoryStream(location, "*.class"))
+                {
+                    for(Path file : files)
+                        classFiles.add(file);
+                }
+                classFiles.sort(null);
+
+                for(Path file : classFiles)
+                {
+                    digest.update(file.getFileName().toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            }
+            else
+            {
+                //a jar
+                digest.update(Files.readAllBytes(location));
+            }
+
+            compilerVersion = toHex(digest.digest());
+        }
+        catch(Exception e)
+        {
+            //every run with an unknown version shares entries, which is still right as long as the compiler doesn't change
+        }
+
+        return compilerVersion;
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try
+        {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch(NoSuchAlgorithmException e)
+        {
+            //every JVM has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        char[] hex = new char[bytes.length * 2];
+        for(int i = 0;i < bytes.length;i++)
+        {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    private static void deleteQuietly(Path file)
+    {
+        if(file == null)
+            return;
+
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch(IOException e)
+        {
+            //left for the next eviction
+        }
+    }
+}
+
+/*
+Everything in one entry of the CompilationCache, as it was stored
+ */
+class CachedEntry
+{
+    int programNum;
+    boolean exactOnly;
+    int[] lines;
+    int[] columns;
+    byte[] executable;
+    String output;
+}
+
+/*
+A program read from the CompilationCache
+ */
+class CachedProgram
+{
+    private final String output;
+    private final byte[] executable;
+
+    public CachedProgram(String programOutput, byte[] programExecutable)
+    {
+        output = programOutput;
+        executable = programExecutable;
+    }
+
+    //returns everything compile() printed for the program
+    public String getOutput()
+    {
+        return output;
+    }
+
+    //returns the executable, or null if code generation failed
+    public byte[] getExecutable()
+    {
+        return executable;
+    }
+}
@@ -1,53 +1,222 @@
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
-import java.util.List;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Queue;
 import java.util.Scanner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class Compiler
 {
     public static void main(String[] args)
+    {
+        //options come before the test file name
+        //-mmap: read the file through a memory-mapped buffer instead of a Scanner (faster for very large files)
+        //-parallel: compile the programs in the file on multiple threads (output is still in program order)
+        //-log=<level>: only print messages at or above the level (ERROR, WARN, INFO, or DEBUG, which is the default)
+        //-compact: only print errors and the executables
+        //-O: optimize the generated code (the executables are smaller and faster, but don't match the unoptimized ones)
+        //-run: run each executable in the emulator, and print its output and how many cycles it took
+        //-profile: run each executable like -run, and also print how many cycles each line and while loop took
+        //-translate: run each executable like -run, but translated to JVM bytecode instead of emulated (the results are the same)
+        //-jvm: also compile each program straight to a JVM class (with no 256 byte limit), run it, and print its output
+        //-cache=<dir>: keep compiled programs in the directory, and reuse them when the same program is compiled with the same options
+        //-cache-size=<MB>: the most the cache directory can hold before the least recently used programs are deleted (64 by default)
+        boolean useMappedInput = false;
+        boolean parallel = false;
+        LogLevel logLevel = LogLevel.DEBUG;
+        boolean compact = false;
+        CompilerOptions options = new CompilerOptions();
+        String cacheDirectory = null;
+        long cacheSize = DEFAULT_CACHE_MB;
+        String fileName = null;
+
+        for(String arg : args)
+        {
+            if(arg.equals("-mmap"))
+                useMappedInput = true;
+            else if(arg.equals("-parallel"))
+                parallel = true;
+            else if(arg.startsWith("-log="))
+                logLevel = parseLogLevel(arg.substring("-log=".length()));
+            else if(arg.equals("-compact"))
+                compact = true;
+            else if(options.parseOption(arg))
+                continue;
+            else if(arg.startsWith("-cache="))
+                cacheDirectory = arg.substring("-cache=".length());
+            else if(arg.startsWith("-cache-size="))
+                cacheSize = parseSize(arg.substring("-cache-size=".length()));
+            else
+                fileName = arg;
+        }
+
+        if(fileName == null || logLevel == null || cacheSize < 0)
+        {
+            System.out.println("Usage: java Compiler [-mmap] [-parallel] [-log=ERROR|WARN|INFO|DEBUG] [-compact] [-O] [-run] [-profile] [-translate] [-jvm] [-cache=<dir>] [-cache-size=<MB>] <testFileName>");
+            return;
+        }
+
+        //compact mode only ever shows errors
+        if(compact)
+            logLevel = LogLevel.ERROR;
+
+        //everything is printed through one buffered writer, which is only flushed at the end
+        BufferedWriter output = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), 1 << 16);
+        Log log = new Log(output, logLevel, compact);
+
+        //without a cache directory that can be used, everything is just compiled
+        CompilationCache cache = null;
+        if(cacheDirectory != null)
+        {
+            try
+            {
+                cache = new CompilationCache(Paths.get(cacheDirectory), cacheSize * 1024 * 1024);
+            }
+            catch(IOException e)
+            {
+                log.warn("Cache", "Could not use the cache directory, so nothing will be cached: " + e.getMessage());
+            }
+        }
+
+        try
+        {
+            Lexer lexer;
+            if(useMappedInput)
+                lexer = new Lexer(new MappedSourceReader(Paths.get(fileName)), log);
+            else
+                lexer = new Lexer(new Scanner(new File(fileName)), log);
+
+            if(parallel)
+                compileParallel(lexer, log, options, cache);
+            else
+                compileSequential(lexer, log, options, cache);
+        }
+        catch(FileNotFoundException | NoSuchFileException e)
+        {
+            log.println("File not found. Make sure the test file is in the same directory as the class file" +
+                    " or is has a relative path from that directory");
+        }
+        catch(IOException e)
+        {
+            log.println("Could not read file: " + e.getMessage());
+        }
+        finally
+        {
+            log.flush();
+        }
+    }
+
+    //the size of the cache if -cache-size isn't given, in MB
+    static final long DEFAULT_CACHE_MB = 64;
+
+    //returns the number of MB, or -1 if it isn't a number
+    static long parseSize(String megabytes)
     {
         try
         {
-            Scanner scan = new Scanner(new File(args[0]));
+            return Long.parseLong(megabytes);
+        }
+        catch(NumberFormatException e)
+        {
+            return -1;
+        }
+    }
 
-            Lexer lexer = new Lexer(scan);
-            List<Token> tokens;
+    //returns the log level with the given name, or null if there isn't one
+    static LogLevel parseLogLevel(String name)
+    {
+        for(LogLevel level : LogLevel.values())
+        {
+            if(level.name().equalsIgnoreCase(name))
+                return level;
+        }
+
+        return null;
+    }
+
+    //compiles each program one at a time, printing as it goes
+    private static void compileSequential(Lexer lexer, Log log, CompilerOptions options, CompilationCache cache)
+    {
+        while (lexer.hasNextProgram())
+        {
+            ProgramCompilation program = new ProgramCompilation(log, options, cache);
+            program.lex(lexer);
+            program.compile();
+        }
+    }
 
-            Parser parser = new Parser();
-            SyntaxTree cst;
+    //the most programs that can be lexed but not printed yet, per thread
+    //this keeps a huge file from having the output of every program in memory at once
+    private static final int PROGRAMS_PER_THREAD = 4;
 
-            SemanticAnalyzer analyzer = new SemanticAnalyzer();
-            SyntaxTree ast;
+    //lexes the programs in order, compiles them on a pool of threads, and then prints their output in order
+    //each program gets a log with the same settings as the main log, but that prints into its own buffer
+    private static void compileParallel(Lexer lexer, Log log, CompilerOptions options, CompilationCache cache)
+    {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
 
-            CodeGenerator generator  = new CodeGenerator();
+        //the output of each program that has been started, in program order
+        Queue<Future<StringWriter>> inProgress = new ArrayDeque<Future<StringWriter>>();
 
+        try
+        {
             while (lexer.hasNextProgram())
             {
-                tokens = lexer.getNextProgram();
-                System.out.println();
+                StringWriter programOutput = new StringWriter();
+                Log programLog = log.withOutput(programOutput);
+                ProgramCompilation program = new ProgramCompilation(programLog, options, cache);
+                program.lex(lexer);
 
-                cst = parser.tryParseProgram(tokens, lexer.getProgramCount(), lexer.hasError());
-                System.out.println();
+                inProgress.add(pool.submit(() -> {
+                    program.compile();
+                    programLog.flush();
+                    return programOutput;
+                }));
 
-                ast = analyzer.tryAnalyzeProgram(cst, lexer.getProgramCount(), lexer.hasError() | parser.hasError());
-                System.out.println();
+                //wait on the oldest program if there are too many waiting to be printed
+                if(inProgress.size() >= threads * PROGRAMS_PER_THREAD)
+                    printProgramOutput(inProgress.remove(), log);
+            }
 
-                generator.tryCodeGeneration(ast, lexer.getProgramCount(), lexer.hasError() | parser.hasError() | analyzer.hasError());
-                System.out.println();
+            while(!inProgress.isEmpty())
+                printProgramOutput(inProgress.remove(), log);
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
 
-                //print CST, AST, and SymbolTable
-                parser.printCST();
-                analyzer.printAST();
-                analyzer.printSymbolTable();
-                generator.printExecutable();
-                System.out.println();
-            }
+    //waits for a program to finish compiling and prints its output
+    private static void printProgramOutput(Future<StringWriter> programOutput, Log log)
+    {
+        try
+        {
+            log.print(programOutput.get().toString());
         }
-        catch(FileNotFoundException e)
+        catch(ExecutionException e)
         {
-            System.out.println("File not found. Make sure the test file is in the same directory as the class file" +
-                    " or is has a relative path from that directory");
+            //the compile itself threw something, so rethrow it the same as if it happened on this thread
+            if(e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            else
+                throw new RuntimeException(e.getCause());
+        }
+        catch(InterruptedException e)
+        {
+            throw new RuntimeException(e);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,182 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/*
+Sends a file to a running CompilerServer and prints what it sent back, so the output is the same as running Compiler
+on the file (with the same options), without starting the whole compiler in a new JVM
+
+With -save=<dir>, the executable of each program that compiled is also written to <dir>/program<num>.bin
+ */
+public class CompilerClient
+{
+    public static void main(String[] args)
+    {
+        //-port=<port>: the port the server is listening on (6502 by default)
+        //-save=<dir>: write each executable to a file in the directory
+        //every other option is sent to the server, which takes the same ones as Compiler (ex. -O, -run, -log=<level>)
+        int port = CompilerServer.DEFAULT_PORT;
+        String saveDirectory = null;
+        ArrayList<String> options = new ArrayList<String>();
+        String fileName = null;
+
+        for(String arg : args)
+        {
+            if(arg.startsWith("-port="))
+                port = parsePort(arg.substring("-port=".length()));
+            else if(arg.startsWith("-save="))
+                saveDirectory = arg.substring("-save=".length());
+            else if(arg.startsWith("-"))
+                options.add(arg);
+            else
+                fileName = arg;
+        }
+
+        if(fileName == null || port < 0)
+        {
+            System.out.println("Usage: java CompilerClient [-port=<port>] [-save=<dir>] [compiler options] <testFileName>");
+            return;
+        }
+
+        PrintStream out = System.out;
+        try
+        {
+            byte[] source = Files.readAllBytes(Paths.get(fileName));
+            CompilerResponse response = send(port, options, source);
+
+            if(response.getError() != null)
+            {
+                out.println("The server couldn't compile the file: " + response.getError());
+                return;
+            }
+
+            out.print(response.getOutput());
+
+            if(saveDirectory != null)
+                saveExecutables(Paths.get(saveDirectory), response.getExecutables());
+        }
+        catch(NoSuchFileException e)
+        {
+            out.println("File not found. Make sure the test file is in the same directory as the class file" +
+                    " or is has a relative path from that directory");
+        }
+        catch(IOException e)
+        {
+            out.println("Could not compile on the server: " + e.getMessage());
+        }
+        finally
+        {
+            out.flush();
+        }
+    }
+
+    //returns the port, or -1 if it isn't a valid one
+    private static int parsePort(String port)
+    {
+        try
+        {
+            int value = Integer.parseInt(port);
+            return value <= 0xFFFF ? value : -1;
+        }
+        catch(NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    //sends one request to the server on this machine and reads its response (see CompilerServer for the protocol)
+    public static CompilerResponse send(int port, ArrayList<String> options, byte[] source) throws IOException
+    {
+        try(Socket socket = new Socket(InetAddress.getLoopbackAddress(), port))
+        {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeInt(CompilerServer.PROTOCOL_VERSION);
+            out.writeInt(options.size());
+            for(String option : options)
+                out.writeUTF(option);
+            out.writeInt(source.length);
+            out.write(source);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            if(in.readInt() != CompilerServer.OK)
+                return new CompilerResponse(in.readUTF(), null, null);
+
+            byte[] output = new byte[in.readInt()];
+            in.readFully(output);
+
+            ArrayList<byte[]> executables = new ArrayList<byte[]>();
+            int programCount = in.readInt();
+            for(int i = 0;i < programCount;i++)
+            {
+                byte[] executable = null;
+                int length = in.readInt();
+                if(length >= 0)
+                {
+                    executable = new byte[length];
+                    in.readFully(executable);
+                }
+                executables.add(executable);
+            }
+
+            return new CompilerResponse(null, new String(output, StandardCharsets.UTF_8), executables);
+        }
+    }
+
+    //writes each executable to program<num>.bin in the directory (programs with errors have no executable to write)
+    private static void saveExecutables(Path directory, ArrayList<byte[]> executables) throws IOException
+    {
+        Files.createDirectories(directory);
+        for(int i = 0;i < executables.size();i++)
+        {
+            if(executables.get(i) != null)
+                Files.write(directory.resolve("program" + i + ".bin"), executables.get(i));
+        }
+    }
+}
+
+/*
+What the server sent back for one request
+ */
+class CompilerResponse
+{
+    private final String error;
+    private final String output;
+    private final ArrayList<byte[]> executables;
+
+    public CompilerResponse(String requestError, String compilerOutput, ArrayList<byte[]> programExecutables)
+    {
+        error = requestError;
+        output = compilerOutput;
+        executables = programExecutables;
+    }
+
+    //returns why the server rejected the request, or null if it was compiled
+    public String getError()
+    {
+        return error;
+    }
+
+    //returns everything the compiler printed
+    public String getOutput()
+    {
+        return output;
+    }
+
+    //returns the executable of each program in order (null for a program that had an error)
+    public ArrayList<byte[]> getExecutables()
+    {
+        return executables;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+The options that change what the compiler does with each program (set by the command line arguments in Compiler)
+Options that only change how the compiler reads the file or prints messages (ex. -mmap and -log) aren't here
+ */
+public class CompilerOptions
+{
+    private boolean optimizeCode;
+    private boolean runExecutables;
+    private boolean profileExecutables;
+    private boolean translateExecutables;
+    private boolean compileToJvm;
+
+    //everything is off by default
+    public CompilerOptions()
+    {
+        optimizeCode = false;
+        runExecutables = false;
+        profileExecutables = false;
+        translateExecutables = false;
+        compileToJvm = false;
+    }
+
+    //sets the option for a command line argument (ex. "-O"), and returns false if it isn't one of these options
+    //(shared by Compiler and CompilerServer, so both take the same options)
+    public boolean parseOption(String arg)
+    {
+        if(arg.equals("-O"))
+            setOptimizeCode(true);
+        else if(arg.equals("-run"))
+            setRunExecutables(true);
+        else if(arg.equals("-profile"))
+        {
+            setRunExecutables(true);
+            setProfileExecutables(true);
+        }
+        else if(arg.equals("-translate"))
+        {
+            setRunExecutables(true);
+            setTranslateExecutables(true);
+        }
+        else if(arg.equals("-jvm"))
+            setCompileToJvm(true);
+        else
+            return false;
+
+        return true;
+    }
+
+    //whether the generated code is optimized (-O)
+    public boolean optimizeCode()
+    {
+        return optimizeCode;
+    }
+
+    public void setOptimizeCode(boolean optimize)
+    {
+        optimizeCode = optimize;
+    }
+
+    //whether each executable is run in the emulator after it is printed (-run)
+    public boolean runExecutables()
+    {
+        return runExecutables;
+    }
+
+    public void setRunExecutables(boolean run)
+    {
+        runExecutables = run;
+    }
+
+    //whether each executable that is run also has its cycles printed for each line and loop (-profile)
+    public boolean profileExecutables()
+    {
+        return profileExecutables;
+    }
+
+    public void setProfileExecutables(boolean profile)
+    {
+        profileExecutables = profile;
+    }
+
+    //whether each executable that is run is translated to JVM bytecode first, instead of emulated (-translate)
+    public boolean translateExecutables()
+    {
+        return translateExecutables;
+    }
+
+    public void setTranslateExecutables(boolean translate)
+    {
+        translateExecutables = translate;
+    }
+
+    //whether each program is also compiled to a JVM class and run (-jvm)
+    public boolean compileToJvm()
+    {
+        return compileToJvm;
+    }
+
+    public void setCompileToJvm(boolean jvm)
+    {
+        compileToJvm = jvm;
+    }
+}
@@ -0,0 +1,240 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Scanner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+Keeps one JVM running and compiles files sent to it by CompilerClient, so a compile doesn't pay for starting a JVM
+and HotSpot compiling the Lexer, Parser, SemanticAnalyzer, and CodeGenerator all over again
+
+The server only listens on the loopback address, and each connection is one request, handled on a pool of threads
+Nothing is shared between requests except the CompilationCache (if there is one), since every request makes its own
+Lexer, and every program gets its own stages (the same as -parallel)
+
+A request is
+    int         PROTOCOL_VERSION
+    int         the number of options, then each option as a UTF string (the same options Compiler takes, ex. "-O")
+    int         the length of the source, then the bytes of the source file (read the same way Compiler reads a file)
+A response is
+    int         OK, or BAD_REQUEST followed by a UTF string saying why
+    int         the length of the output, then everything the compiler printed as UTF-8 bytes
+    int         the number of programs, then for each program the length of its executable (or -1 if it had an error) and its bytes
+ */
+public class CompilerServer
+{
+    public static final int DEFAULT_PORT = 6502;
+    public static final int PROTOCOL_VERSION = 1;
+
+    public static final int OK = 0;
+    public static final int BAD_REQUEST = 1;
+
+    //the largest source accepted, so one request can't run the server out of memory
+    private static final int MAX_SOURCE_BYTES = 64 * 1024 * 1024;
+
+    //how long a client can take to send its request before the connection is dropped
+    private static final int READ_TIMEOUT_MILLIS = 30 * 1000;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService pool;
+    private final CompilationCache cache;
+
+    public CompilerServer(int port, int threads, CompilationCache compilationCache) throws IOException
+    {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        pool = Executors.newFixedThreadPool(threads);
+        cache = compilationCache;
+    }
+
+    public static void main(String[] args)
+    {
+        //-port=<port>: the port to listen on (6502 by default)
+        //-threads=<count>: how many requests can be compiled at once (the number of processors by default)
+        //-cache=<dir> and -cache-size=<MB>: the same as for Compiler, shared by every request
+        int port = DEFAULT_PORT;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String cacheDirectory = null;
+        long cacheSize = Compiler.DEFAULT_CACHE_MB;
+        boolean badArgument = false;
+
+        for(String arg : args)
+        {
+            if(arg.startsWith("-port="))
+                port = parseCount(arg.substring("-port=".length()));
+            else if(arg.startsWith("-threads="))
+                threads = parseCount(arg.substring("-threads=".length()));
+            else if(arg.startsWith("-cache="))
+                cacheDirectory = arg.substring("-cache=".length());
+            else if(arg.startsWith("-cache-size="))
+                cacheSize = Compiler.parseSize(arg.substring("-cache-size=".length()));
+            else
+                badArgument = true;
+        }
+
+        if(badArgument || port < 0 || port > 0xFFFF || threads <= 0 || cacheSize < 0)
+        {
+            System.out.println("Usage: java CompilerServer [-port=<port>] [-threads=<count>] [-cache=<dir>] [-cache-size=<MB>]");
+            return;
+        }
+
+        try
+        {
+            CompilationCache cache = null;
+            if(cacheDirectory != null)
+                cache = new CompilationCache(Paths.get(cacheDirectory), cacheSize * 1024 * 1024);
+
+            CompilerServer server = new CompilerServer(port, threads, cache);
+            System.out.println("Listening on port " + server.serverSocket.getLocalPort());
+            server.serve();
+        }
+        catch(IOException e)
+        {
+            System.out.println("Could not start the server: " + e.getMessage());
+        }
+    }
+
+    //returns the number, or -1 if it isn't one
+    private static int parseCount(String count)
+    {
+        try
+        {
+            return Integer.parseInt(count);
+        }
+        catch(NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    //accepts connections until the server socket is closed, handing each one to the pool
+    public void serve() throws IOException
+    {
+        try
+        {
+            while(!serverSocket.isClosed())
+            {
+                Socket socket = serverSocket.accept();
+                pool.execute(() -> handle(socket));
+            }
+        }
+        finally
+        {
+            pool.shutdownNow();
+        }
+    }
+
+    //reads one request from the connection, compiles it, and sends back the response
+    private void handle(Socket socket)
+    {
+        try(socket)
+        {
+            socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+            String error = respond(in, out);
+            if(error != null)
+            {
+                out.writeInt(BAD_REQUEST);
+                out.writeUTF(error);
+            }
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            //the client went away or sent half a request, so there is no one to tell
+        }
+    }
+
+    //reads the request and writes the response, or returns why the request is bad (without writing anything)
+    private String respond(DataInputStream in, DataOutputStream out) throws IOException
+    {
+        if(in.readInt() != PROTOCOL_VERSION)
+            return "Unsupported protocol version";
+
+        LogLevel logLevel = LogLevel.DEBUG;
+        boolean compact = false;
+        CompilerOptions options = new CompilerOptions();
+
+        int optionCount = in.readInt();
+        for(int i = 0;i < optionCount;i++)
+        {
+            String arg = in.readUTF();
+            if(arg.startsWith("-log="))
+                logLevel = Compiler.parseLogLevel(arg.substring("-log=".length()));
+            else if(arg.equals("-compact"))
+                compact = true;
+            else if(!options.parseOption(arg))
+                return "Unknown option: " + arg;
+
+            if(logLevel == null)
+                return "Unknown log level: " + arg;
+        }
+
+        int sourceLength = in.readInt();
+        if(sourceLength < 0 || sourceLength > MAX_SOURCE_BYTES)
+            return "Source is too large";
+        byte[] source = new byte[sourceLength];
+        in.readFully(source);
+
+        //compact mode only ever shows errors
+        if(compact)
+            logLevel = LogLevel.ERROR;
+
+        StringWriter output = new StringWriter();
+        Log log = new Log(output, logLevel, compact);
+        ArrayList<byte[]> executables = compile(source, log, options);
+        log.flush();
+
+        byte[] outputBytes = output.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(OK);
+        out.writeInt(outputBytes.length);
+        out.write(outputBytes);
+
+        out.writeInt(executables.size());
+        for(byte[] executable : executables)
+        {
+            if(executable == null)
+            {
+                out.writeInt(-1);
+            }
+            else
+            {
+                out.writeInt(executable.length);
+                out.write(executable);
+            }
+        }
+
+        return null;
+    }
+
+    //compiles every program in the source (the same as Compiler without -parallel), and returns their executables in order
+    private ArrayList<byte[]> compile(byte[] source, Log log, CompilerOptions options)
+    {
+        ArrayList<byte[]> executables = new ArrayList<byte[]>();
+        //read through a channel, so the source is decoded exactly like Compiler decodes a file
+        Lexer lexer = new Lexer(new Scanner(Channels.newChannel(new ByteArrayInputStream(source))), log);
+
+        while(lexer.hasNextProgram())
+        {
+            ProgramCompilation program = new ProgramCompilation(log, options, cache);
+            program.lex(lexer);
+            program.compile();
+            executables.add(program.getExecutable());
+        }
+
+        return executables;
+    }
+}
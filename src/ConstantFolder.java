@@ -0,0 +1,229 @@
+import java.util.HashMap;
+import java.util.HashSet;
+
+/*
+Simplifies the expressions in an analyzed AST before code is generated for it
+
+    Constant folding - additions and comparisons of literals are replaced with their result (ex. 1 + 2 becomes 3, (5 == 5) becomes true)
+        additions wrap around at 256 the same as the 6502a's 8 bit accumulator
+        a constant added to an addition that can't be folded is combined into it (ex. 1 + 2 + a becomes 3 + a)
+    Constant propagation - ids whose value is known are replaced with the value (ex. int a  a = 4  print(a + 1) prints 5)
+        the value of each variable is followed through straight-line code
+        any variable assigned in a while loop isn't known inside it or after it, and one assigned in an if isn't known after it
+
+Strings are compared by their location in the heap on the 6502a, and every literal string is only put in the heap once,
+so two literal strings are equal iff their text is equal
+Uninitialized strings point to the end of memory instead of the heap, so they are never treated as known
+ */
+public class ConstantFolder
+{
+    private final Log log;
+    private SyntaxTree ast;
+
+    //the literal each variable is known to hold (by id and scope, ex. "a@1")
+    private HashMap<String, Token> knownValues;
+
+    //the number of expressions that were folded (or ids replaced)
+    private int foldCount;
+
+    public ConstantFolder(Log outputLog)
+    {
+        log = outputLog;
+    }
+
+    //folds the expressions in the tree, changing it in place
+    public void foldProgram(SyntaxTree programAST)
+    {
+        ast = programAST;
+        knownValues = new HashMap<String, Token>();
+        foldCount = 0;
+
+        foldBlock(ast.getFirstChild(ast.getRootIndex()));
+
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Optimizer", "Constant folding simplified " + foldCount + " expressions");
+    }
+
+    private void foldBlock(int blockNode)
+    {
+        for(int child = ast.getFirstChild(blockNode);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+        {
+            switch(ast.getNodeType(child))
+            {
+                case PRINT_STATEMENT:
+                {
+                    foldExpr(ast.getChild(child, 0));
+                    break;
+                }
+                case ASSIGNMENT_STATEMENT:
+                {
+                    Token value = foldExpr(ast.getChild(child, 1));
+                    setKnownValue(ast.getToken(ast.getChild(child, 0)), value);
+                    break;
+                }
+                case VAR_DECL:
+                {
+                    Token type = ast.getToken(ast.getChild(child, 0));
+                    Token id = ast.getToken(ast.getChild(child, 1));
+
+                    //ints start at 0 and booleans start at false (see CodeGenerator.generateVarDecl)
+                    if(type.getValue().equals("int"))
+                        setKnownValue(id, new Token(TokenType.DIGIT, "0", id.getLineNumber(), id.getColumnNumber()));
+                    else if(type.getValue().equals("boolean"))
+                        setKnownValue(id, new Token(TokenType.BOOL_VAL, "false", id.getLineNumber(), id.getColumnNumber()));
+                    else
+                        setKnownValue(id, null);
+                    break;
+                }
+                case WHILE_STATEMENT:
+                {
+                    //anything assigned in the loop could have any of its values when the condition is checked
+                    HashSet<String> assigned = new HashSet<String>();
+                    findAssignedIds(ast.getChild(child, 1), assigned);
+                    knownValues.keySet().removeAll(assigned);
+
+                    Token condition = foldExpr(ast.getChild(child, 0));
+                    if(condition == null || condition.getValue().equals("true"))
+                    {
+                        foldBlock(ast.getChild(child, 1));
+                        knownValues.keySet().removeAll(assigned);
+                    }
+                    break;
+                }
+                case IF_STATEMENT:
+                {
+                    Token condition = foldExpr(ast.getChild(child, 0));
+                    if(condition == null)
+                    {
+                        //the block might not run, so anything assigned in it isn't known after it
+                        HashSet<String> assigned = new HashSet<String>();
+                        findAssignedIds(ast.getChild(child, 1), assigned);
+                        foldBlock(ast.getChild(child, 1));
+                        knownValues.keySet().removeAll(assigned);
+                    }
+                    else if(condition.getValue().equals("true"))
+                    {
+                        //the block always runs, so it is the same as straight-line code
+                        foldBlock(ast.getChild(child, 1));
+                    }
+                    break;
+                }
+                case BLOCK:
+                {
+                    foldBlock(child);
+                    break;
+                }
+            }
+        }
+    }
+
+    //folds the expression, and returns the literal token it folded into (or null if it isn't constant)
+    private Token foldExpr(int exprNode)
+    {
+        switch(ast.getNodeType(exprNode))
+        {
+            case ADDITION:
+            {
+                //the first half is always a digit
+                Token firstHalf = foldExpr(ast.getChild(exprNode, 0));
+                int secondNode = ast.getChild(exprNode, 1);
+                Token secondHalf = foldExpr(secondNode);
+
+                if(secondHalf != null)
+                {
+                    int sum = (Integer.parseInt(firstHalf.getValue()) + Integer.parseInt(secondHalf.getValue())) & 0xFF;
+                    return replaceWithLiteral(exprNode, TokenType.DIGIT, String.valueOf(sum));
+                }
+                else if(ast.getNodeType(secondNode) == NodeType.ADDITION)
+                {
+                    //a + (b + expr) is the same as (a + b) + expr, so the constants are combined into the second addition
+                    int secondFirstNode = ast.getChild(secondNode, 0);
+                    int sum = (Integer.parseInt(firstHalf.getValue()) + Integer.parseInt(ast.getToken(secondFirstNode).getValue())) & 0xFF;
+                    replaceWithLiteral(secondFirstNode, TokenType.DIGIT, String.valueOf(sum));
+                    ast.replaceWithChild(exprNode, secondNode);
+                }
+
+                return null;
+            }
+            case EQUALITY:
+            case INEQUALITY:
+            {
+                Token firstHalf = foldExpr(ast.getChild(exprNode, 0));
+                Token secondHalf = foldExpr(ast.getChild(exprNode, 1));
+
+                if(firstHalf != null && secondHalf != null)
+                {
+                    //ints are compared as numbers, since a folded int might not be written the same way as a digit
+                    boolean equal;
+                    if(firstHalf.getType() == TokenType.DIGIT)
+                        equal = Integer.parseInt(firstHalf.getValue()) == Integer.parseInt(secondHalf.getValue());
+                    else
+                        equal = firstHalf.getValue().equals(secondHalf.getValue());
+
+                    boolean result = ast.getNodeType(exprNode) == NodeType.EQUALITY ? equal : !equal;
+                    return replaceWithLiteral(exprNode, TokenType.BOOL_VAL, String.valueOf(result));
+                }
+
+                return null;
+            }
+            case TERMINAL:
+            {
+                Token token = ast.getToken(exprNode);
+
+                if(token.getType() == TokenType.ID)
+                {
+                    Token value = knownValues.get(key(token));
+                    if(value == null)
+                        return null;
+
+                    return replaceWithLiteral(exprNode, value.getType(), value.getValue());
+                }
+
+                //digits, booleans, and strings are already literals
+                return token;
+            }
+        }
+
+        return null;
+    }
+
+    //replaces the node with a literal of the given type and value, and returns the new token
+    private Token replaceWithLiteral(int node, TokenType type, String value)
+    {
+        Location location = ast.getLocation(node);
+        Token literal = new Token(type, value, location.getLine(), location.getColumn());
+
+        ast.replaceWithLeaf(node, literal);
+        foldCount++;
+
+        return literal;
+    }
+
+    //records the value of a variable after it is assigned (null if it isn't known)
+    private void setKnownValue(Token id, Token value)
+    {
+        if(value == null)
+            knownValues.remove(key(id));
+        else
+            knownValues.put(key(id), value);
+    }
+
+    //adds every id that is declared or assigned anywhere in the block (including nested blocks) to the set
+    private void findAssignedIds(int node, HashSet<String> assigned)
+    {
+        for(int child = ast.getFirstChild(node);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+        {
+            if(ast.getNodeType(child) == NodeType.ASSIGNMENT_STATEMENT)
+                assigned.add(key(ast.getToken(ast.getChild(child, 0))));
+            else if(ast.getNodeType(child) == NodeType.VAR_DECL)
+                assigned.add(key(ast.getToken(ast.getChild(child, 1))));
+            else if(!ast.isLeaf(child))
+                findAssignedIds(child, assigned);
+        }
+    }
+
+    private static String key(Token id)
+    {
+        return id.getValue() + "@" + id.getScope();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+Removes statements from an analyzed AST that can never run or that do nothing
+It runs after ConstantFolder, so any condition that is always true or false has already been folded into a literal
+
+    if false { ... }       is removed
+    if true { ... }        is replaced with its block
+    while false { ... }    is removed
+    while true { ... }     never ends, so every statement after it in the same block is removed
+    an if or block that has nothing in it is removed (conditions can't change anything, so they don't need to be run)
+ */
+public class DeadCodeEliminator
+{
+    private final Log log;
+    private SyntaxTree ast;
+
+    //the number of statements that were removed or replaced
+    private int removedCount;
+
+    public DeadCodeEliminator(Log outputLog)
+    {
+        log = outputLog;
+    }
+
+    //removes the dead code from the tree, changing it in place, and returns how many statements were removed or replaced
+    public int eliminate(SyntaxTree programAST)
+    {
+        ast = programAST;
+        removedCount = 0;
+
+        eliminateBlock(ast.getFirstChild(ast.getRootIndex()));
+
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Optimizer", "Dead code elimination removed " + removedCount + " statements");
+
+        return removedCount;
+    }
+
+    private void eliminateBlock(int blockNode)
+    {
+        int child = ast.getFirstChild(blockNode);
+        while(child != SyntaxTree.NONE)
+        {
+            //find the next statement first, since this one might be removed
+            int next = ast.getNextSibling(child);
+
+            switch(ast.getNodeType(child))
+            {
+                case IF_STATEMENT:
+                {
+                    int condition = ast.getChild(child, 0);
+                    int block = ast.getChild(child, 1);
+                    eliminateBlock(block);
+
+                    if(isLiteral(condition, "false") || ast.getFirstChild(block) == SyntaxTree.NONE)
+                        remove(child);
+                    else if(isLiteral(condition, "true"))
+                        replace(child, block);
+                    break;
+                }
+                case WHILE_STATEMENT:
+                {
+                    int condition = ast.getChild(child, 0);
+                    if(isLiteral(condition, "false"))
+                    {
+                        remove(child);
+                    }
+                    else
+                    {
+                        eliminateBlock(ast.getChild(child, 1));
+
+                        //there is no way out of the loop, so nothing after it can run
+                        if(isLiteral(condition, "true"))
+                        {
+                            while(next != SyntaxTree.NONE)
+                            {
+                                int after = ast.getNextSibling(next);
+                                remove(next);
+                                next = after;
+                            }
+                        }
+                    }
+                    break;
+                }
+                case BLOCK:
+                {
+                    eliminateBlock(child);
+                    if(ast.getFirstChild(child) == SyntaxTree.NONE)
+                        remove(child);
+                    break;
+                }
+            }
+
+            child = next;
+        }
+    }
+
+    //returns true if the node is the boolean literal with the given value
+    private boolean isLiteral(int node, String value)
+    {
+        Token token = ast.getToken(node);
+        return token != null && token.getType() == TokenType.BOOL_VAL && token.getValue().equals(value);
+    }
+
+    private void remove(int statement)
+    {
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Optimizer", "Removing dead " + ast.getLabel(statement) + " at " + ast.getLocation(statement));
+
+        ast.removeNode(statement);
+        removedCount++;
+    }
+
+    private void replace(int statement, int block)
+    {
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Optimizer", "Replacing " + ast.getLabel(statement) + " at " + ast.getLocation(statement) + " with its block");
+
+        ast.replaceWithChild(statement, block);
+        removedCount++;
+    }
+}
@@ -0,0 +1,277 @@
+import java.util.Arrays;
+
+/*
+How a run of an executable ended
+ */
+enum ExecutionResult
+{
+    HALTED,                 // reached a BRK
+    INVALID_OP_CODE,        // reached a byte that isn't a 6502a instruction
+    INVALID_ADDRESS,        // used an address outside of memory (or ran off the end of it)
+    INSTRUCTION_LIMIT       // ran more instructions than the limit (most likely an infinite loop)
+}
+
+/*
+Something that can run a 6502a executable and report what it did (the Emulator, or a TranslatedProgram)
+ */
+interface ExecutableRunner
+{
+    void setInstructionLimit(long limit);
+
+    //runs the executable until it halts or stops on an error, and returns how it ended
+    ExecutionResult run();
+
+    String getOutput();
+
+    long getCycles();
+
+    long getInstructionCount();
+
+    //returns how the run ended (or null if it hasn't been run)
+    ExecutionResult getResult();
+}
+
+/*
+Runs a 6502a executable made by CodeGenerator, the same way the 6502a OS would, without leaving the compiler
+
+Memory is the 256 byte executable itself, so the code, variables, and heap are all where the code generator put them
+Supports every instruction in OpCode, and keeps track of
+    the output of every system call (ints printed in decimal, strings printed up to their 00)
+    the number of instructions run, and the number of cycles they took (see OpCode for each instruction's cycles)
+    how many times the instruction at each address ran, and how many cycles it took in total (used by Profiler)
+
+Only CPX changes the Z flag, and BNE jumps relative to the end of the branch, wrapping around memory
+ */
+public class Emulator implements ExecutableRunner
+{
+    private static final int MEMORY_SIZE = 0x100;
+
+    //the most instructions to run by default, so a program with an infinite loop still stops
+    public static final long DEFAULT_INSTRUCTION_LIMIT = 1000000;
+
+    private final byte[] memory;
+    private int accumulator;
+    private int xRegister;
+    private int yRegister;
+    private boolean zeroFlag;
+    private int programCounter;
+
+    private final StringBuilder output;
+    private long cycles;
+    private long instructionCount;
+    private long instructionLimit;
+    private ExecutionResult result;
+
+    //the number of times each address was run as an instruction, and the cycles spent running it
+    private final long[] executionsAt;
+    private final long[] cyclesAt;
+
+    //the executable is copied, so running it never changes the original
+    public Emulator(byte[] executable)
+    {
+        memory = new byte[MEMORY_SIZE];
+        System.arraycopy(executable, 0, memory, 0, Math.min(executable.length, MEMORY_SIZE));
+
+        output = new StringBuilder();
+        executionsAt = new long[MEMORY_SIZE];
+        cyclesAt = new long[MEMORY_SIZE];
+        instructionLimit = DEFAULT_INSTRUCTION_LIMIT;
+        reset();
+    }
+
+    public void setInstructionLimit(long limit)
+    {
+        instructionLimit = limit;
+    }
+
+    //runs the executable until it halts or stops on an error, and returns how it ended
+    public ExecutionResult run()
+    {
+        while(result == null)
+            step();
+
+        return result;
+    }
+
+    //runs one instruction, and returns false once the program has stopped
+    public boolean step()
+    {
+        if(result != null)
+            return false;
+
+        if(instructionCount >= instructionLimit)
+        {
+            result = ExecutionResult.INSTRUCTION_LIMIT;
+            return false;
+        }
+        if(programCounter >= MEMORY_SIZE)
+        {
+            result = ExecutionResult.INVALID_ADDRESS;
+            return false;
+        }
+
+        OpCode opCode = OpCode.fromCode(memory[programCounter]);
+        if(opCode == null)
+        {
+            result = ExecutionResult.INVALID_OP_CODE;
+            return false;
+        }
+        if(programCounter + opCode.getSize() > MEMORY_SIZE)
+        {
+            result = ExecutionResult.INVALID_ADDRESS;
+            return false;
+        }
+
+        int constant = memory[programCounter + 1 < MEMORY_SIZE ? programCounter + 1 : programCounter] & 0xFF;
+        int address = opCode.getSize() == 3 ? constant | (memory[programCounter + 2] & 0xFF) << 8 : 0;
+        if(address >= MEMORY_SIZE)
+        {
+            result = ExecutionResult.INVALID_ADDRESS;
+            return false;
+        }
+
+        int nextInstruction = programCounter + opCode.getSize();
+        int instructionCycles = opCode.getCycles();
+
+        switch(opCode)
+        {
+            case LDA_CONST:
+                accumulator = constant;
+                break;
+            case LDA_MEM:
+                accumulator = memory[address] & 0xFF;
+                break;
+            case STA:
+                memory[address] = (byte) accumulator;
+                break;
+            case ADC:
+                accumulator = (accumulator + (memory[address] & 0xFF)) & 0xFF;
+                break;
+            case LDX_CONST:
+                xRegister = constant;
+                break;
+            case LDX_MEM:
+                xRegister = memory[address] & 0xFF;
+                break;
+            case LDY_CONST:
+                yRegister = constant;
+                break;
+            case LDY_MEM:
+                yRegister = memory[address] & 0xFF;
+                break;
+            case NOP:
+                break;
+            case BRK:
+                result = ExecutionResult.HALTED;
+                break;
+            case CPX:
+                zeroFlag = (memory[address] & 0xFF) == xRegister;
+                break;
+            case BNE:
+                if(!zeroFlag)
+                {
+                    nextInstruction = (nextInstruction + constant) % MEMORY_SIZE;
+                    instructionCycles++;
+                }
+                break;
+            case INC:
+                memory[address] = (byte) (memory[address] + 1);
+                break;
+            case SYS:
+                systemCall();
+                break;
+        }
+
+        cycles += instructionCycles;
+        instructionCount++;
+        executionsAt[programCounter]++;
+        cyclesAt[programCounter] += instructionCycles;
+        programCounter = nextInstruction;
+
+        return result == null;
+    }
+
+    public String getOutput()
+    {
+        return output.toString();
+    }
+
+    public long getCycles()
+    {
+        return cycles;
+    }
+
+    public long getInstructionCount()
+    {
+        return instructionCount;
+    }
+
+    //returns how many times the instruction at the address has run
+    public long getExecutionsAt(int address)
+    {
+        return executionsAt[address];
+    }
+
+    //returns how many cycles have been spent running the instruction at the address
+    public long getCyclesAt(int address)
+    {
+        return cyclesAt[address];
+    }
+
+    //returns how the run ended (or null if it is still running)
+    public ExecutionResult getResult()
+    {
+        return result;
+    }
+
+    //returns the address of the next instruction to run
+    public int getProgramCounter()
+    {
+        return programCounter;
+    }
+
+    //continues a run that was started somewhere else (ex. by a TranslatedProgram that can't run the rest of the program),
+    //with the registers, counts, and output it had so far (the memory is what this emulator was made with)
+    public void resume(int a, int x, int y, boolean zero, int address, long cycleCount, long instructions, String outputSoFar)
+    {
+        reset();
+        accumulator = a;
+        xRegister = x;
+        yRegister = y;
+        zeroFlag = zero;
+        programCounter = address;
+        cycles = cycleCount;
+        instructionCount = instructions;
+        output.append(outputSoFar);
+    }
+
+    private void reset()
+    {
+        accumulator = 0;
+        xRegister = 0;
+        yRegister = 0;
+        zeroFlag = false;
+        programCounter = 0;
+
+        output.setLength(0);
+        cycles = 0;
+        instructionCount = 0;
+        Arrays.fill(executionsAt, 0);
+        Arrays.fill(cyclesAt, 0);
+        result = null;
+    }
+
+    //prints the int in Y if X is 1, or the string starting at the address in Y if X is 2 (anything else does nothing)
+    private void systemCall()
+    {
+        if(xRegister == 1)
+        {
+            output.append(yRegister);
+        }
+        else if(xRegister == 2)
+        {
+            for(int i = yRegister;i < MEMORY_SIZE && memory[i] != 0;i++)
+                output.append((char) (memory[i] & 0xFF));
+        }
+    }
+}
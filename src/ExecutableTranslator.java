@@ -0,0 +1,450 @@
+import java.lang.reflect.Constructor;
+import java.util.ArrayDeque;
+
+/*
+Translates a 6502a executable into a JVM class, so running it many times (ex. for regression or performance checks)
+runs code that HotSpot has compiled instead of going through the Emulator one instruction at a time
+
+The executable is split into basic blocks, found by following every path through the code from address 0
+(every jump on the 6502a is a BNE to a fixed address, so every instruction that can run is found ahead of time)
+Each block becomes a method of a class that extends TranslatedProgram:
+    the accumulator, X, Y, and the Z flag are loaded into locals when the block starts, and written back when it ends
+    the instruction count and cycles of the whole block are added at once when it starts
+    it returns the address of the next block, and runBlock() uses a tableswitch to call the block at an address
+
+Anything that can't be translated ahead of time is left to the Emulator
+    a byte that isn't an instruction, or an instruction that uses an address outside of memory, ends its block,
+    and the Emulator runs the rest of the program from there (so it stops with the same error)
+    a block that would go past the instruction limit is run by the Emulator, so it stops on the same instruction
+    a program that stores into its own code can't be translated at all (translate() returns false),
+    since the code could change after it was translated, so newRunner() just returns an Emulator
+ */
+public class ExecutableTranslator
+{
+    private static final int MEMORY_SIZE = 0x100;
+
+    private static final String CLASS_NAME = "TranslatedExecutable";
+    private static final String SUPER_NAME = "TranslatedProgram";
+
+    //the locals of each block method (0 is this)
+    private static final int ACCUMULATOR = 1;
+    private static final int X_REGISTER = 2;
+    private static final int Y_REGISTER = 3;
+    private static final int ZERO_FLAG = 4;
+    private static final int MEMORY = 5;
+
+    private final byte[] executable;
+
+    //whether each address is the start of an instruction that can run, the start of a block, or part of the code
+    private final boolean[] instructionStart;
+    private final boolean[] blockStart;
+    private final boolean[] code;
+
+    private Constructor<? extends TranslatedProgram> constructor;
+
+    public ExecutableTranslator(byte[] executableImage)
+    {
+        executable = executableImage;
+        instructionStart = new boolean[MEMORY_SIZE];
+        blockStart = new boolean[MEMORY_SIZE];
+        code = new boolean[MEMORY_SIZE];
+    }
+
+    //translates the executable and loads the class, returning false if it can't be translated
+    public boolean translate()
+    {
+        findBlocks();
+
+        //code that might change while it runs can only be emulated
+        for(int address = 0;address < MEMORY_SIZE;address++)
+        {
+            OpCode opCode = instructionStart[address] ? OpCode.fromCode(executable[address]) : null;
+            if((opCode == OpCode.STA || opCode == OpCode.INC) && code[operand(address)])
+                return false;
+        }
+
+        ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME, SUPER_NAME);
+        writeConstructor(classFile);
+        writeRunBlock(classFile);
+        for(int address = 0;address < MEMORY_SIZE;address++)
+        {
+            if(blockStart[address])
+                writeBlock(classFile, address);
+        }
+
+        try
+        {
+            Class<?> translatedClass = new GeneratedClassLoader().define(classFile);
+            constructor = translatedClass.asSubclass(TranslatedProgram.class).getDeclaredConstructor();
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Could not load the translated executable", e);
+        }
+
+        return true;
+    }
+
+    //returns something that runs the executable once: a new instance of the translated class,
+    //or an Emulator if it wasn't translated
+    public ExecutableRunner newRunner()
+    {
+        if(constructor == null)
+            return new Emulator(executable);
+
+        try
+        {
+            TranslatedProgram program = constructor.newInstance();
+            program.load(executable);
+            return program;
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Could not make the translated executable", e);
+        }
+    }
+
+    //follows every path through the code from address 0, marking every instruction that can run and where each block starts
+    private void findBlocks()
+    {
+        ArrayDeque<Integer> toVisit = new ArrayDeque<Integer>();
+        toVisit.add(0);
+        blockStart[0] = true;
+
+        while(!toVisit.isEmpty())
+        {
+            int address = toVisit.remove();
+            if(address >= MEMORY_SIZE || instructionStart[address])
+                continue;
+
+            OpCode opCode = decode(address);
+            if(opCode == null)
+                continue;
+
+            instructionStart[address] = true;
+            for(int i = address;i < address + opCode.getSize();i++)
+                code[i] = true;
+
+            if(opCode == OpCode.BNE)
+            {
+                int next = address + opCode.getSize();
+                int target = branchTarget(address);
+                if(next < MEMORY_SIZE)
+                    blockStart[next] = true;
+                blockStart[target] = true;
+                toVisit.add(next);
+                toVisit.add(target);
+            }
+            else if(opCode != OpCode.BRK)
+            {
+                toVisit.add(address + opCode.getSize());
+            }
+        }
+    }
+
+    //returns the instruction at the address, or null if it would stop the Emulator with an error
+    private OpCode decode(int address)
+    {
+        OpCode opCode = OpCode.fromCode(executable[address]);
+        if(opCode == null || address + opCode.getSize() > MEMORY_SIZE)
+            return null;
+        if(opCode.getSize() == 3 && executable[address + 2] != 0)
+            return null;
+        return opCode;
+    }
+
+    //returns the constant or address after the op code (only for instructions that have one)
+    private int operand(int address)
+    {
+        return executable[address + 1] & 0xFF;
+    }
+
+    //returns where the BNE at the address jumps to (relative to the end of the branch, wrapping around memory)
+    private int branchTarget(int address)
+    {
+        return (address + 2 + operand(address)) % MEMORY_SIZE;
+    }
+
+    private void writeConstructor(ClassFileWriter classFile)
+    {
+        MethodWriter method = classFile.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+        method.local(MethodWriter.ALOAD, 0);
+        method.invoke(MethodWriter.INVOKESPECIAL, SUPER_NAME, "<init>", "()V");
+        method.emit(MethodWriter.RETURN);
+        method.setMaxStack(1);
+    }
+
+    //writes runBlock(), which calls the method for the block starting at the address
+    private void writeRunBlock(ClassFileWriter classFile)
+    {
+        MethodWriter method = classFile.addMethod(ClassFileWriter.ACC_PROTECTED, "runBlock", "(I)I");
+
+        int notABlock = method.newLabel();
+        int[] labels = new int[MEMORY_SIZE];
+        for(int address = 0;address < MEMORY_SIZE;address++)
+            labels[address] = blockStart[address] ? method.newLabel() : notABlock;
+
+        method.local(MethodWriter.ILOAD, 1);
+        method.tableSwitch(0, notABlock, labels);
+
+        for(int address = 0;address < MEMORY_SIZE;address++)
+        {
+            if(blockStart[address])
+            {
+                method.placeLabel(labels[address]);
+                method.local(MethodWriter.ALOAD, 0);
+                method.invoke(MethodWriter.INVOKESPECIAL, CLASS_NAME, blockName(address), "()I");
+                method.emit(MethodWriter.IRETURN);
+            }
+        }
+
+        //anything else is left to the Emulator (which can't happen, since every block is found ahead of time)
+        method.placeLabel(notABlock);
+        method.pushInt(TranslatedProgram.INTERPRET);
+        method.local(MethodWriter.ILOAD, 1);
+        method.emit(MethodWriter.ISUB);
+        method.emit(MethodWriter.IRETURN);
+        method.setMaxStack(2);
+    }
+
+    //writes the method for the block starting at the address
+    private void writeBlock(ClassFileWriter classFile, int start)
+    {
+        MethodWriter method = classFile.addMethod(ClassFileWriter.ACC_PRIVATE, blockName(start), "()I");
+        method.setMaxStack(8);
+
+        //find the end of the block, and how many instructions and cycles it takes (not counting a taken branch)
+        //the block either ends with a BNE or BRK, runs into the next block, or stops before something only the Emulator can run
+        int end = start;
+        int instructions = 0;
+        long blockCycles = 0;
+        boolean runsIntoBlock = false;
+        while(true)
+        {
+            OpCode opCode = decode(end);
+            if(opCode == null)
+                break;
+
+            instructions++;
+            blockCycles += opCode.getCycles();
+            end += opCode.getSize();
+
+            if(opCode == OpCode.BNE || opCode == OpCode.BRK || end >= MEMORY_SIZE)
+                break;
+            if(blockStart[end])
+            {
+                runsIntoBlock = true;
+                break;
+            }
+        }
+
+        //if the whole block would go past the limit, the Emulator runs it so it stops on the right instruction
+        int withinLimit = method.newLabel();
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "instructionCount", "J");
+        method.pushLong(instructions);
+        method.emit(MethodWriter.LADD);
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "instructionLimit", "J");
+        method.emit(MethodWriter.LCMP);
+        method.jump(MethodWriter.IFLE, withinLimit);
+        method.pushInt(TranslatedProgram.INTERPRET - start);
+        method.emit(MethodWriter.IRETURN);
+        method.placeLabel(withinLimit);
+
+        addToCounter(method, "instructionCount", instructions);
+        addToCounter(method, "cycles", blockCycles);
+        loadState(method);
+
+        for(int address = start;address < end;address += OpCode.fromCode(executable[address]).getSize())
+        {
+            OpCode opCode = OpCode.fromCode(executable[address]);
+            //1 byte instructions (BRK, NOP, SYS) have no operand, and can be the last byte of memory
+            int operand = opCode.getSize() > 1 ? operand(address) : 0;
+
+            switch(opCode)
+            {
+                case LDA_CONST:
+                    loadConstant(method, operand, ACCUMULATOR);
+                    break;
+                case LDA_MEM:
+                    loadMemory(method, operand, ACCUMULATOR);
+                    break;
+                case LDX_CONST:
+                    loadConstant(method, operand, X_REGISTER);
+                    break;
+                case LDX_MEM:
+                    loadMemory(method, operand, X_REGISTER);
+                    break;
+                case LDY_CONST:
+                    loadConstant(method, operand, Y_REGISTER);
+                    break;
+                case LDY_MEM:
+                    loadMemory(method, operand, Y_REGISTER);
+                    break;
+                case STA:
+                {
+                    method.local(MethodWriter.ALOAD, MEMORY);
+                    method.pushInt(operand);
+                    method.local(MethodWriter.ILOAD, ACCUMULATOR);
+                    method.emit(MethodWriter.BASTORE);
+                    break;
+                }
+                case ADC:
+                {
+                    //the 6502a has no carry, so the sum just wraps around
+                    method.local(MethodWriter.ILOAD, ACCUMULATOR);
+                    pushMemory(method, operand);
+                    method.emit(MethodWriter.IADD);
+                    method.pushInt(0xFF);
+                    method.emit(MethodWriter.IAND);
+                    method.local(MethodWriter.ISTORE, ACCUMULATOR);
+                    break;
+                }
+                case INC:
+                {
+                    method.local(MethodWriter.ALOAD, MEMORY);
+                    method.pushInt(operand);
+                    method.emit(MethodWriter.DUP2);
+                    method.emit(MethodWriter.BALOAD);
+                    method.pushInt(1);
+                    method.emit(MethodWriter.IADD);
+                    method.emit(MethodWriter.BASTORE);
+                    break;
+                }
+                case CPX:
+                {
+                    //Z = (memory == X), as 1 or 0
+                    int notEqual = method.newLabel();
+                    int done = method.newLabel();
+                    pushMemory(method, operand);
+                    method.local(MethodWriter.ILOAD, X_REGISTER);
+                    method.jump(MethodWriter.IF_ICMPNE, notEqual);
+                    method.pushInt(1);
+                    method.jump(MethodWriter.GOTO, done);
+                    method.placeLabel(notEqual);
+                    method.pushInt(0);
+                    method.placeLabel(done);
+                    method.local(MethodWriter.ISTORE, ZERO_FLAG);
+                    break;
+                }
+                case SYS:
+                {
+                    method.local(MethodWriter.ALOAD, 0);
+                    method.local(MethodWriter.ILOAD, X_REGISTER);
+                    method.local(MethodWriter.ILOAD, Y_REGISTER);
+                    method.invoke(MethodWriter.INVOKEVIRTUAL, SUPER_NAME, "systemCall", "(II)V");
+                    break;
+                }
+                case BNE:
+                {
+                    //a taken branch takes one more cycle
+                    int notTaken = method.newLabel();
+                    storeState(method);
+                    method.local(MethodWriter.ILOAD, ZERO_FLAG);
+                    method.jump(MethodWriter.IFNE, notTaken);
+                    addToCounter(method, "cycles", 1);
+                    method.pushInt(branchTarget(address));
+                    method.emit(MethodWriter.IRETURN);
+                    method.placeLabel(notTaken);
+                    method.pushInt(address + 2);
+                    method.emit(MethodWriter.IRETURN);
+                    return;
+                }
+                case BRK:
+                {
+                    storeState(method);
+                    method.pushInt(TranslatedProgram.HALTED);
+                    method.emit(MethodWriter.IRETURN);
+                    return;
+                }
+                default:
+                    //NOP does nothing
+                    break;
+            }
+        }
+
+        //the block runs into the next block, or into something only the Emulator can run
+        storeState(method);
+        if(runsIntoBlock)
+            method.pushInt(end);
+        else
+            method.pushInt(TranslatedProgram.INTERPRET - end);
+        method.emit(MethodWriter.IRETURN);
+    }
+
+    //loads the registers and memory into the block's locals
+    private void loadState(MethodWriter method)
+    {
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "accumulator", "I");
+        method.local(MethodWriter.ISTORE, ACCUMULATOR);
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "xRegister", "I");
+        method.local(MethodWriter.ISTORE, X_REGISTER);
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "yRegister", "I");
+        method.local(MethodWriter.ISTORE, Y_REGISTER);
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "zeroFlag", "Z");
+        method.local(MethodWriter.ISTORE, ZERO_FLAG);
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "memory", "[B");
+        method.local(MethodWriter.ASTORE, MEMORY);
+    }
+
+    //writes the registers in the block's locals back into the program (memory is the same array, so it is already there)
+    private void storeState(MethodWriter method)
+    {
+        method.local(MethodWriter.ALOAD, 0);
+        method.local(MethodWriter.ILOAD, ACCUMULATOR);
+        method.field(MethodWriter.PUTFIELD, SUPER_NAME, "accumulator", "I");
+        method.local(MethodWriter.ALOAD, 0);
+        method.local(MethodWriter.ILOAD, X_REGISTER);
+        method.field(MethodWriter.PUTFIELD, SUPER_NAME, "xRegister", "I");
+        method.local(MethodWriter.ALOAD, 0);
+        method.local(MethodWriter.ILOAD, Y_REGISTER);
+        method.field(MethodWriter.PUTFIELD, SUPER_NAME, "yRegister", "I");
+        method.local(MethodWriter.ALOAD, 0);
+        method.local(MethodWriter.ILOAD, ZERO_FLAG);
+        method.field(MethodWriter.PUTFIELD, SUPER_NAME, "zeroFlag", "Z");
+    }
+
+    //adds a constant to one of the program's long counters
+    private void addToCounter(MethodWriter method, String counter, long amount)
+    {
+        method.local(MethodWriter.ALOAD, 0);
+        method.emit(MethodWriter.DUP);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, counter, "J");
+        method.pushLong(amount);
+        method.emit(MethodWriter.LADD);
+        method.field(MethodWriter.PUTFIELD, SUPER_NAME, counter, "J");
+    }
+
+    private void loadConstant(MethodWriter method, int constant, int register)
+    {
+        method.pushInt(constant);
+        method.local(MethodWriter.ISTORE, register);
+    }
+
+    private void loadMemory(MethodWriter method, int address, int register)
+    {
+        pushMemory(method, address);
+        method.local(MethodWriter.ISTORE, register);
+    }
+
+    //pushes the byte at the address (as 0 to 255)
+    private void pushMemory(MethodWriter method, int address)
+    {
+        method.local(MethodWriter.ALOAD, MEMORY);
+        method.pushInt(address);
+        method.emit(MethodWriter.BALOAD);
+        method.pushInt(0xFF);
+        method.emit(MethodWriter.IAND);
+    }
+
+    private static String blockName(int address)
+    {
+        return "block" + address;
+    }
+}
@@ -0,0 +1,448 @@
+import java.lang.reflect.Constructor;
+import java.util.HashMap;
+
+/*
+Generates a JVM class for an analyzed AST, as a second target next to CodeGenerator
+The class extends JvmProgram, and can be loaded and run right away with newProgram()
+
+Programs aren't limited to 256 bytes, and loops run at JIT speed, but what they print is the same as the 6502a executable
+(see JvmProgram for how each type is kept and printed)
+
+The whole program is one method, execute():
+    every variable gets its own local, found by its id and the scope it was declared in (ex. "a@1"),
+    which the semantic analyzer already put in every id token
+    ints and booleans are int locals, strings are String locals
+    while loops check their condition at the bottom, and count down the loop limit each time around
+    conditions jump straight on the comparison, without making a boolean value first
+ */
+public class JvmCodeGenerator
+{
+    private static final String CLASS_NAME = "CompiledProgram";
+    private static final String SUPER_NAME = "JvmProgram";
+    private static final String STRING_TYPE = "Ljava/lang/String;";
+
+    //local 0 is this, and local 1 is how many more times loops can go around
+    private static final int LOOP_COUNTER = 1;
+    private static final int FIRST_VARIABLE = 2;
+
+    private final Log log;
+
+    private SyntaxTree ast;
+    private MethodWriter method;
+    private byte[] classBytes;
+    private Constructor<? extends JvmProgram> constructor;
+    private int errors;
+
+    //the local and type of every variable, by id and scope
+    private HashMap<String, Integer> variableLocals;
+    private HashMap<String, SymbolType> variableTypes;
+
+    public JvmCodeGenerator(Log outputLog)
+    {
+        log = outputLog;
+    }
+
+    public boolean hasError()
+    {
+        return errors > 0;
+    }
+
+    //returns the class file made for the program (only valid if generation succeeded)
+    public byte[] getClassFile()
+    {
+        return classBytes;
+    }
+
+    //returns a new instance of the program's class, ready to run (only valid if generation succeeded)
+    public JvmProgram newProgram()
+    {
+        try
+        {
+            return constructor.newInstance();
+        }
+        catch(ReflectiveOperationException e)
+        {
+            throw new IllegalStateException("Could not make the compiled program", e);
+        }
+    }
+
+    public void tryCodeGeneration(SyntaxTree programAST, int program, boolean hadPrevError)
+    {
+        errors = 0;
+        classBytes = null;
+        constructor = null;
+
+        if(hadPrevError)
+        {
+            log.message(LogLevel.INFO, "JVM Code Generation for Program " + program + " skipped due to previous errors");
+            errors++;
+            return;
+        }
+
+        if(log.isEnabled(LogLevel.INFO))
+            log.info("JVM Code Generation", "Generating a class for program " + program);
+
+        try
+        {
+            generateProgram(programAST);
+        }
+        catch(IllegalStateException e)
+        {
+            //the class file couldn't be written (ex. the program is too big for one JVM method)
+            log.error("JVM Code Generation", e.getMessage());
+            errors++;
+        }
+
+        if(errors > 0)
+            log.error("JVM Code Generation", "Generation failed with " + errors + " errors");
+        else if(log.isEnabled(LogLevel.INFO))
+            log.info("JVM Code Generation", "Generated " + classBytes.length + " bytes of class file");
+    }
+
+    private void generateProgram(SyntaxTree programAST)
+    {
+        ast = programAST;
+        variableLocals = new HashMap<String, Integer>();
+        variableTypes = new HashMap<String, SymbolType>();
+
+        ClassFileWriter classFile = new ClassFileWriter(CLASS_NAME, SUPER_NAME);
+
+        MethodWriter constructorMethod = classFile.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+        constructorMethod.local(MethodWriter.ALOAD, 0);
+        constructorMethod.invoke(MethodWriter.INVOKESPECIAL, SUPER_NAME, "<init>", "()V");
+        constructorMethod.emit(MethodWriter.RETURN);
+        constructorMethod.setMaxStack(1);
+
+        int topBlock = ast.getFirstChild(ast.getRootIndex());
+        method = classFile.addMethod(ClassFileWriter.ACC_PROTECTED, "execute", "()V");
+        method.setMaxStack(2 + findStackNeeded(topBlock));
+
+        method.local(MethodWriter.ALOAD, 0);
+        method.field(MethodWriter.GETFIELD, SUPER_NAME, "loopLimit", "I");
+        method.local(MethodWriter.ISTORE, LOOP_COUNTER);
+
+        //every variable starts out set, so the JVM knows its type everywhere in the method
+        declareVariables(topBlock);
+        for(String variable : variableLocals.keySet())
+        {
+            if(variableTypes.get(variable) == SymbolType.STRING)
+            {
+                method.emit(MethodWriter.ACONST_NULL);
+                method.local(MethodWriter.ASTORE, variableLocals.get(variable));
+            }
+            else
+            {
+                method.pushInt(0);
+                method.local(MethodWriter.ISTORE, variableLocals.get(variable));
+            }
+        }
+
+        generateBlock(topBlock);
+        method.emit(MethodWriter.RETURN);
+
+        classBytes = classFile.toByteArray();
+        try
+        {
+            Class<?> programClass = new GeneratedClassLoader().define(classFile);
+            constructor = programClass.asSubclass(JvmProgram.class).getDeclaredConstructor();
+        }
+        catch(ReflectiveOperationException | LinkageError e)
+        {
+            throw new IllegalStateException("Could not load the compiled program: " + e.getMessage());
+        }
+    }
+
+    //gives every variable declared in the block (or any block inside it) its own local
+    private void declareVariables(int blockNode)
+    {
+        for(int child = ast.getFirstChild(blockNode);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+        {
+            switch(ast.getNodeType(child))
+            {
+                case VAR_DECL:
+                {
+                    String variable = key(ast.getToken(ast.getChild(child, 1)));
+                    if(!variableLocals.containsKey(variable))
+                    {
+                        variableLocals.put(variable, FIRST_VARIABLE + variableLocals.size());
+                        variableTypes.put(variable, ast.getExprType(child));
+                    }
+                    break;
+                }
+                case WHILE_STATEMENT:
+                case IF_STATEMENT:
+                {
+                    declareVariables(ast.getChild(child, 1));
+                    break;
+                }
+                case BLOCK:
+                {
+                    declareVariables(child);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void generateBlock(int blockNode)
+    {
+        for(int child = ast.getFirstChild(blockNode);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+        {
+            switch(ast.getNodeType(child))
+            {
+                case PRINT_STATEMENT:
+                {
+                    generatePrint(child);
+                    break;
+                }
+                case ASSIGNMENT_STATEMENT:
+                {
+                    Token id = ast.getToken(ast.getChild(child, 0));
+                    generateExpr(ast.getChild(child, 1));
+                    storeVariable(key(id));
+                    break;
+                }
+                case VAR_DECL:
+                {
+                    //declarations set the variable back to its starting value each time they run, like on the 6502a
+                    String variable = key(ast.getToken(ast.getChild(child, 1)));
+                    if(variableTypes.get(variable) == SymbolType.STRING)
+                        method.emit(MethodWriter.ACONST_NULL);
+                    else
+                        method.pushInt(0);
+                    storeVariable(variable);
+                    break;
+                }
+                case WHILE_STATEMENT:
+                {
+                    generateWhile(child);
+                    break;
+                }
+                case IF_STATEMENT:
+                {
+                    int ifEnd = method.newLabel();
+                    generateJump(ast.getChild(child, 0), false, ifEnd);
+                    generateBlock(ast.getChild(child, 1));
+                    method.placeLabel(ifEnd);
+                    break;
+                }
+                case BLOCK:
+                {
+                    generateBlock(child);
+                    break;
+                }
+            }
+        }
+    }
+
+    private void generatePrint(int printNode)
+    {
+        method.local(MethodWriter.ALOAD, 0);
+        generateExpr(ast.getChild(printNode, 0));
+
+        SymbolType type = ast.getExprType(printNode);
+        if(type == SymbolType.STRING)
+            method.invoke(MethodWriter.INVOKEVIRTUAL, SUPER_NAME, "printString", "(" + STRING_TYPE + ")V");
+        else if(type == SymbolType.BOOLEAN)
+            method.invoke(MethodWriter.INVOKEVIRTUAL, SUPER_NAME, "printBoolean", "(I)V");
+        else
+            method.invoke(MethodWriter.INVOKEVIRTUAL, SUPER_NAME, "printInt", "(I)V");
+    }
+
+    //the condition is checked at the bottom, so each time around the loop only runs the block, the loop count, and the condition
+    private void generateWhile(int whileNode)
+    {
+        int whileBlock = method.newLabel();
+        int whileCondition = method.newLabel();
+        int keepGoing = method.newLabel();
+
+        method.jump(MethodWriter.GOTO, whileCondition);
+
+        method.placeLabel(whileBlock);
+        generateBlock(ast.getChild(whileNode, 1));
+
+        //stop the program once loops have gone around too many times
+        method.increment(LOOP_COUNTER, -1);
+        method.local(MethodWriter.ILOAD, LOOP_COUNTER);
+        method.jump(MethodWriter.IFGT, keepGoing);
+        method.local(MethodWriter.ALOAD, 0);
+        method.invoke(MethodWriter.INVOKEVIRTUAL, SUPER_NAME, "stopLoop", "()V");
+        method.placeLabel(keepGoing);
+
+        method.placeLabel(whileCondition);
+        generateJump(ast.getChild(whileNode, 0), true, whileBlock);
+    }
+
+    //writes code that jumps to the label if the condition is jumpWhen (true or false), and falls through otherwise
+    private void generateJump(int conditionNode, boolean jumpWhen, int label)
+    {
+        switch(ast.getNodeType(conditionNode))
+        {
+            case EQUALITY:
+            case INEQUALITY:
+            {
+                //jump if the halves are equal when this is == and jumping when true (or != and jumping when false)
+                boolean jumpIfEqual = (ast.getNodeType(conditionNode) == NodeType.EQUALITY) == jumpWhen;
+                boolean strings = findType(ast.getChild(conditionNode, 0)) == SymbolType.STRING;
+
+                generateExpr(ast.getChild(conditionNode, 0));
+                generateExpr(ast.getChild(conditionNode, 1));
+                if(strings)
+                    method.jump(jumpIfEqual ? MethodWriter.IF_ACMPEQ : MethodWriter.IF_ACMPNE, label);
+                else
+                    method.jump(jumpIfEqual ? MethodWriter.IF_ICMPEQ : MethodWriter.IF_ICMPNE, label);
+                return;
+            }
+            case TERMINAL:
+            {
+                Token token = ast.getToken(conditionNode);
+                if(token.getType() == TokenType.BOOL_VAL)
+                {
+                    //a literal either always jumps or never does
+                    if(token.getValue().equals("true") == jumpWhen)
+                        method.jump(MethodWriter.GOTO, label);
+                    return;
+                }
+                break;
+            }
+        }
+
+        //anything else is a boolean value of 0 or 1
+        generateExpr(conditionNode);
+        method.jump(jumpWhen ? MethodWriter.IFNE : MethodWriter.IFEQ, label);
+    }
+
+    //writes code that pushes the value of the expression
+    private void generateExpr(int exprNode)
+    {
+        switch(ast.getNodeType(exprNode))
+        {
+            case ADDITION:
+            {
+                //additions wrap around at 256, like on the 6502a
+                generateExpr(ast.getChild(exprNode, 0));
+                generateExpr(ast.getChild(exprNode, 1));
+                method.emit(MethodWriter.IADD);
+                method.pushInt(0xFF);
+                method.emit(MethodWriter.IAND);
+                return;
+            }
+            case EQUALITY:
+            case INEQUALITY:
+            {
+                int isTrue = method.newLabel();
+                int done = method.newLabel();
+                generateJump(exprNode, true, isTrue);
+                method.pushInt(0);
+                method.jump(MethodWriter.GOTO, done);
+                method.placeLabel(isTrue);
+                method.pushInt(1);
+                method.placeLabel(done);
+                return;
+            }
+            case TERMINAL:
+            {
+                Token token = ast.getToken(exprNode);
+                switch(token.getType())
+                {
+                    case DIGIT:
+                    {
+                        method.pushInt(Integer.parseInt(token.getValue()));
+                        return;
+                    }
+                    case BOOL_VAL:
+                    {
+                        method.pushInt(token.getValue().equals("true") ? 1 : 0);
+                        return;
+                    }
+                    case STRING:
+                    {
+                        //the strings in the tokens are surrounded by quotes, so they need to be removed
+                        String quotedString = token.getValue();
+                        method.pushString(quotedString.substring(1, quotedString.length() - 1));
+                        return;
+                    }
+                    case ID:
+                    {
+                        String variable = key(token);
+                        if(variableTypes.get(variable) == SymbolType.STRING)
+                            method.local(MethodWriter.ALOAD, variableLocals.get(variable));
+                        else
+                            method.local(MethodWriter.ILOAD, variableLocals.get(variable));
+                        return;
+                    }
+                }
+                break;
+            }
+        }
+
+        throw new IllegalStateException("Unexpected expression " + ast.getLabel(exprNode) + " at " + ast.getLocation(exprNode));
+    }
+
+    private void storeVariable(String variable)
+    {
+        if(variableTypes.get(variable) == SymbolType.STRING)
+            method.local(MethodWriter.ASTORE, variableLocals.get(variable));
+        else
+            method.local(MethodWriter.ISTORE, variableLocals.get(variable));
+    }
+
+    //returns the type of an expression (the semantic analyzer already made sure the types match)
+    private SymbolType findType(int exprNode)
+    {
+        switch(ast.getNodeType(exprNode))
+        {
+            case ADDITION:
+                return SymbolType.INT;
+            case EQUALITY:
+            case INEQUALITY:
+                return SymbolType.BOOLEAN;
+            default:
+            {
+                Token token = ast.getToken(exprNode);
+                switch(token.getType())
+                {
+                    case DIGIT:
+                        return SymbolType.INT;
+                    case STRING:
+                        return SymbolType.STRING;
+                    case ID:
+                        return variableTypes.get(key(token));
+                    default:
+                        return SymbolType.BOOLEAN;
+                }
+            }
+        }
+    }
+
+    //returns the most values the code for anything in the block ever has on the stack at once
+    private int findStackNeeded(int node)
+    {
+        switch(ast.getNodeType(node))
+        {
+            case ADDITION:
+            case EQUALITY:
+            case INEQUALITY:
+            {
+                //the first half stays on the stack while the second half is worked out
+                return Math.max(findStackNeeded(ast.getChild(node, 0)), 1 + findStackNeeded(ast.getChild(node, 1)));
+            }
+            case TERMINAL:
+            {
+                return 1;
+            }
+            default:
+            {
+                int most = 0;
+                for(int child = ast.getFirstChild(node);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+                    most = Math.max(most, findStackNeeded(child));
+                return most;
+            }
+        }
+    }
+
+    private static String key(Token id)
+    {
+        return id.getValue() + "@" + id.getScope();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+The class every program compiled by JvmCodeGenerator extends
+The compiled class only has execute(), which runs the whole program and prints through the methods here
+
+Values are printed the same way the 6502a prints them
+    ints are 0 to 255 (additions wrap around, like on the 6502a)
+    booleans are 0 or 1, printed as false or true
+    strings are the same String for the same literal, so == matches comparing heap addresses on the 6502a,
+    and an uninitialized string is null (printed as nothing, and only equal to other uninitialized strings)
+
+Every loop counts down from the loop limit shared by the whole run, and the program is stopped once it reaches 0,
+so a program with an infinite loop still stops (like the instruction limit in the Emulator)
+ */
+public abstract class JvmProgram
+{
+    //the most times all the loops in a program can go around by default
+    public static final int DEFAULT_LOOP_LIMIT = 1000000;
+
+    protected int loopLimit;
+
+    private final StringBuilder output;
+    private ExecutionResult result;
+
+    protected JvmProgram()
+    {
+        loopLimit = DEFAULT_LOOP_LIMIT;
+        output = new StringBuilder();
+    }
+
+    public void setLoopLimit(int limit)
+    {
+        loopLimit = limit;
+    }
+
+    //runs the program, and returns HALTED if it finished, or INSTRUCTION_LIMIT if it was stopped by the loop limit
+    public ExecutionResult run()
+    {
+        if(result != null)
+            return result;
+
+        try
+        {
+            execute();
+            result = ExecutionResult.HALTED;
+        }
+        catch(LoopLimitException e)
+        {
+            result = ExecutionResult.INSTRUCTION_LIMIT;
+        }
+
+        return result;
+    }
+
+    public String getOutput()
+    {
+        return output.toString();
+    }
+
+    //returns how the run ended (or null if it hasn't been run)
+    public ExecutionResult getResult()
+    {
+        return result;
+    }
+
+    //the whole program
+    protected abstract void execute();
+
+    protected void printInt(int value)
+    {
+        output.append(value);
+    }
+
+    protected void printBoolean(int value)
+    {
+        output.append(value != 0 ? "true" : "false");
+    }
+
+    protected void printString(String value)
+    {
+        if(value != null)
+            output.append(value);
+    }
+
+    //called by a loop once the loop limit runs out
+    protected void stopLoop()
+    {
+        throw new LoopLimitException();
+    }
+}
+
+/*
+Thrown to stop a compiled program that went past its loop limit
+ */
+class LoopLimitException extends RuntimeException
+{
+    public LoopLimitException()
+    {
+        super("Loop limit reached", null, false, false);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+Precomputed transition table for the lexer's DFA
+
+Every state has a row of next states (one per ASCII character) and the token type that a token ending in that state
+would have. Any character at or above CHAR_COUNT is an invalid token on its own.
+
+The only context the lexer needs (being inside a string or a comment) only changes how the very first character of a
+token is handled, so there is one start state for each combination of those two flags.
+ */
+public class LexerTable
+{
+    //number of columns in each row of the table
+    private static final int CHAR_COUNT = 128;
+
+    //used in the table for when no longer token is possible
+    public static final int DEAD = -1;
+
+    //the start states, selected by startState()
+    private static final int START = 0;
+    private static final int START_QUOTED = 1;
+    private static final int START_COMMENTED = 2;
+    private static final int START_QUOTED_COMMENTED = 3;
+
+    //the whitespace characters (other than ' ') that are matched by the regex \s
+    private static final String OTHER_WHITESPACE = "\t\n\u000B\f\r";
+
+    //all the keywords along with the type of token they create
+    private static final String[] KEYWORDS = {"print", "while", "if", "int", "string", "boolean", "false", "true"};
+    private static final TokenType[] KEYWORD_TYPES = {TokenType.PRINT_KEY, TokenType.WHILE_KEY, TokenType.IF_KEY,
+            TokenType.VAR_TYPE, TokenType.VAR_TYPE, TokenType.VAR_TYPE, TokenType.BOOL_VAL, TokenType.BOOL_VAL};
+
+    //the flattened table, where row s starts at index s * CHAR_COUNT
+    private static int[] transitions;
+
+    //the token type (as an ordinal) of a token that ends in each state
+    private static int[] accepting;
+
+    private static int stateCount;
+
+    //the state for a single invalid character
+    private static int errorState;
+
+    static
+    {
+        transitions = new int[16 * CHAR_COUNT];
+        accepting = new int[16];
+        stateCount = 0;
+
+        buildTable();
+    }
+
+    //returns the state a new token starts in, given whether the lexer is currently in a string and/or a comment
+    public static int startState(boolean isQuoted, boolean isCommented)
+    {
+        if(isQuoted)
+            return isCommented ? START_QUOTED_COMMENTED : START_QUOTED;
+        else
+            return isCommented ? START_COMMENTED : START;
+    }
+
+    /*
+    Finds the best token starting at index start in input, stopping at index end
+    The best token is the one whose type has the highest precedence (closest to 0), where ties go to the shorter token
+    This mirrors how the old getNextState() switch was used, but without creating any strings
+
+    Returns the token's type ordinal in the upper half of the long and the token's end index in the lower half
+     */
+    public static long bestToken(CharSequence input, int start, int end, int startState)
+    {
+        int state = startState;
+        int bestType = TokenType.DEFAULT.ordinal();
+        int endOfBestToken = start;
+
+        for(int i = start;i < end;i++)
+        {
+            char c = input.charAt(i);
+
+            //characters outside the table are an invalid token on their own, and can't continue any other token
+            if(c < CHAR_COUNT)
+                state = transitions[state * CHAR_COUNT + c];
+            else if(i == start)
+                state = errorState;
+            else
+                state = DEAD;
+
+            if(state == DEAD)
+                break;
+
+            //if the current type has a higher precedence (closer to 0), update best
+            int currType = accepting[state];
+            if(currType < bestType)
+            {
+                bestType = currType;
+                endOfBestToken = i + 1;
+            }
+        }
+
+        return ((long) bestType << 32) | endOfBestToken;
+    }
+
+    /*----------------------------------------- Table Building Methods -----------------------------------------------*/
+
+    //fills the table in with all the states of the DFA
+    //this is the same DFA that used to be hand coded as a switch statement in the Lexer
+    private static void buildTable()
+    {
+        //the four start states come first so their numbers match the constants above
+        for(int i = 0;i < 4;i++)
+            newState(TokenType.DEFAULT);
+
+        //states that end a token immediately and are shared between start states
+        int error = newState(TokenType.ERROR);
+        errorState = error;
+        int quote = newState(TokenType.QUOTE);
+        int eop = newState(TokenType.EOP);
+        int charState = newState(TokenType.CHAR);
+        int space = newState(TokenType.SPACE);
+
+        //"/*" can start a comment anywhere, even inside of a string
+        int slash = newState(TokenType.ERROR);
+        setTransition(slash, '*', newState(TokenType.L_COMMENT));
+
+        //"*/" can only end a comment if the code is currently commented
+        int star = newState(TokenType.ERROR);
+        setTransition(star, '/', newState(TokenType.R_COMMENT));
+
+        //"=" and "==" outside of strings
+        int assign = newState(TokenType.ASSIGN);
+        setTransition(assign, '=', newState(TokenType.EQUALITY));
+
+        //"!=" outside of strings
+        int bang = newState(TokenType.ERROR);
+        setTransition(bang, '=', newState(TokenType.INEQUALITY));
+
+        //the single character symbols outside of strings
+        int[] symbols = {
+                newState(TokenType.L_BRACE),
+                newState(TokenType.R_BRACE),
+                newState(TokenType.L_PAREN),
+                newState(TokenType.R_PAREN),
+                newState(TokenType.ADDITION)};
+        String symbolChars = "{}()+";
+
+        int digit = newState(TokenType.DIGIT);
+        int id = newState(TokenType.ID);
+
+        //the first letter of every keyword is an ID on its own, and the rest of the keyword is a path of ERROR states
+        int[] keywordStarts = new int[CHAR_COUNT];
+        for(int i = 0;i < KEYWORDS.length;i++)
+        {
+            char first = KEYWORDS[i].charAt(0);
+            if(keywordStarts[first] == 0)
+                keywordStarts[first] = newState(TokenType.ID);
+
+            addKeyword(keywordStarts[first], KEYWORDS[i], KEYWORD_TYPES[i]);
+        }
+
+        for(int start = 0;start < 4;start++)
+        {
+            boolean isQuoted = start == START_QUOTED || start == START_QUOTED_COMMENTED;
+            boolean isCommented = start == START_COMMENTED || start == START_QUOTED_COMMENTED;
+
+            //anything not listed below is an invalid token
+            for(char c = 0;c < CHAR_COUNT;c++)
+                setTransition(start, c, error);
+
+            setTransition(start, '\"', quote);
+            setTransition(start, '$', eop);
+            setTransition(start, '/', slash);
+
+            if(isCommented)
+                setTransition(start, '*', star);
+
+            //whitespace other than ' ' is always a space token, while ' ' is a char inside of strings
+            for(int i = 0;i < OTHER_WHITESPACE.length();i++)
+                setTransition(start, OTHER_WHITESPACE.charAt(i), space);
+            setTransition(start, ' ', isQuoted ? charState : space);
+
+            //inside of strings, every letter is a single char, and no symbols or digits are allowed
+            //the symbols and digits default to errors from above
+            for(char c = 'a';c <= 'z';c++)
+            {
+                if(isQuoted)
+                    setTransition(start, c, charState);
+                else if(keywordStarts[c] != 0)
+                    setTransition(start, c, keywordStarts[c]);
+                else
+                    setTransition(start, c, id);
+            }
+
+            if(!isQuoted)
+            {
+                for(int i = 0;i < symbolChars.length();i++)
+                    setTransition(start, symbolChars.charAt(i), symbols[i]);
+
+                for(char c = '0';c <= '9';c++)
+                    setTransition(start, c, digit);
+
+                setTransition(start, '=', assign);
+                setTransition(start, '!', bang);
+            }
+        }
+    }
+
+    //adds the path for the rest of a keyword, starting from the state after its first letter
+    //the prefixes of a keyword are not tokens on their own, so they accept ERROR
+    private static void addKeyword(int firstState, String keyword, TokenType type)
+    {
+        int state = firstState;
+
+        for(int i = 1;i < keyword.length();i++)
+        {
+            char c = keyword.charAt(i);
+            int next = nextState(state, c);
+
+            if(next == DEAD)
+            {
+                next = newState(i == keyword.length() - 1 ? type : TokenType.ERROR);
+                setTransition(state, c, next);
+            }
+
+            state = next;
+        }
+    }
+
+    //returns the next state after reading c in the given state (DEAD if no token can continue)
+    private static int nextState(int state, char c)
+    {
+        return transitions[state * CHAR_COUNT + c];
+    }
+
+    //creates a new state with no transitions (every character goes to DEAD) and returns its number
+    private static int newState(TokenType acceptingType)
+    {
+        //grow the table if needed
+        if(stateCount == accepting.length)
+        {
+            int[] newTransitions = new int[transitions.length * 2];
+            System.arraycopy(transitions, 0, newTransitions, 0, transitions.length);
+            transitions = newTransitions;
+
+            int[] newAccepting = new int[accepting.length * 2];
+            System.arraycopy(accepting, 0, newAccepting, 0, accepting.length);
+            accepting = newAccepting;
+        }
+
+        int state = stateCount;
+        stateCount++;
+
+        accepting[state] = acceptingType.ordinal();
+        for(int c = 0;c < CHAR_COUNT;c++)
+            transitions[state * CHAR_COUNT + c] = DEAD;
+
+        return state;
+    }
+
+    private static void setTransition(int state, char c, int nextState)
+    {
+        transitions[state * CHAR_COUNT + c] = nextState;
+    }
+}
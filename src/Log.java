@@ -0,0 +1,167 @@
+import java.io.IOException;
+import java.io.Writer;
+
+enum LogLevel
+{
+    //ordered from most to least important
+    ERROR,
+    WARN,
+    INFO,
+    DEBUG
+}
+
+/*
+Where every stage of the compiler prints its messages
+
+Messages are only printed if their level is at or above the level of the log,
+so checking isEnabled() before building a message means a disabled level costs nothing
+(ex. if(log.isEnabled(LogLevel.DEBUG)) log.debug("Lexer", token.toString());)
+
+The output is not flushed after every line, so flush() must be called when done
+Like a PrintStream, errors writing the output are ignored (and can be checked with checkError())
+
+In compact mode, only errors and the executable are printed
+ */
+public class Log
+{
+    private static final String NEWLINE = System.lineSeparator();
+
+    private final Writer out;
+    private final LogLevel level;
+    private final boolean compact;
+    private boolean error;
+
+    //the output should be buffered, since everything is written to it in small pieces
+    public Log(Writer output, LogLevel logLevel, boolean isCompact)
+    {
+        out = output;
+        level = logLevel;
+        compact = isCompact;
+        error = false;
+    }
+
+    //makes a log with the same settings as this one that prints somewhere else
+    public Log withOutput(Writer output)
+    {
+        return new Log(output, level, compact);
+    }
+
+    public LogLevel getLevel()
+    {
+        return level;
+    }
+
+    //Returns true if messages of the given level will be printed
+    public boolean isEnabled(LogLevel messageLevel)
+    {
+        return messageLevel.ordinal() <= level.ordinal();
+    }
+
+    //Returns true if only errors and the executable should be printed
+    public boolean isCompact()
+    {
+        return compact;
+    }
+
+    //the following print a message in the form "LEVEL stage - message"
+    public void error(String stage, String message)
+    {
+        log(LogLevel.ERROR, stage, message);
+    }
+
+    public void warn(String stage, String message)
+    {
+        log(LogLevel.WARN, stage, message);
+    }
+
+    public void info(String stage, String message)
+    {
+        log(LogLevel.INFO, stage, message);
+    }
+
+    public void debug(String stage, String message)
+    {
+        log(LogLevel.DEBUG, stage, message);
+    }
+
+    //prints a message as-is (without the level and stage) if the level is enabled
+    public void message(LogLevel messageLevel, String message)
+    {
+        if(isEnabled(messageLevel))
+            println(message);
+    }
+
+    //prints part of the output of the compiler (trees, tables, and executables), which ignores the level
+    public void print(String output)
+    {
+        try
+        {
+            out.write(output);
+        }
+        catch(IOException e)
+        {
+            error = true;
+        }
+    }
+
+    public void print(char output)
+    {
+        try
+        {
+            out.write(output);
+        }
+        catch(IOException e)
+        {
+            error = true;
+        }
+    }
+
+    public void println(String output)
+    {
+        print(output);
+        print(NEWLINE);
+    }
+
+    public void println()
+    {
+        print(NEWLINE);
+    }
+
+    //prints an empty line to separate sections of the output (skipped in compact mode)
+    public void blankLine()
+    {
+        if(!compact)
+            println();
+    }
+
+    public void flush()
+    {
+        try
+        {
+            out.flush();
+        }
+        catch(IOException e)
+        {
+            error = true;
+        }
+    }
+
+    //flushes the output and returns true if anything couldn't be written
+    public boolean checkError()
+    {
+        flush();
+        return error;
+    }
+
+    private void log(LogLevel messageLevel, String stage, String message)
+    {
+        if(!isEnabled(messageLevel))
+            return;
+
+        print(messageLevel.name());
+        print(' ');
+        print(stage);
+        print(" - ");
+        println(message);
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+Reads the source straight out of a memory-mapped file instead of through a Scanner
+
+The file is read with the same charset as the Scanner (the default charset), so both give the same characters
+    a file that is all ASCII (which every valid program is) is read straight from the mapped bytes,
+    and lines are handed to the Lexer as views over them, so nothing is copied until a token is made
+    any other file is decoded into characters first, and lines are views over those
+    a file that isn't valid in the charset is rejected, instead of guessing what its characters are
+ */
+public class MappedSourceReader implements SourceReader
+{
+    //the characters of the file, either viewing the mapped bytes or decoded from them
+    private final CharSequence text;
+    private final int size;
+
+    //the position of the start of the next line
+    private int position;
+
+    //the position of the next non-whitespace character (at or after position), if it has been found yet
+    private int nextNonBlank;
+    //true once hasNext() has checked all the way to the end of the file and found only whitespace
+    private boolean onlyBlankLeft;
+
+    public MappedSourceReader(Path file) throws IOException
+    {
+        ByteBuffer bytes;
+        try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+        {
+            long fileSize = channel.size();
+            if(fileSize > Integer.MAX_VALUE)
+                throw new IOException("File is too large to map: " + file);
+
+            //the mapping stays valid after the channel is closed
+            bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        }
+
+        Charset charset = Charset.defaultCharset();
+        if(isAscii(bytes) && isAsciiCompatible(charset))
+        {
+            text = new MappedAscii(bytes);
+        }
+        else
+        {
+            try
+            {
+                text = charset.newDecoder().decode(bytes);
+            }
+            catch(CharacterCodingException e)
+            {
+                throw new IOException("File is not valid " + charset.name() + " text: " + file);
+            }
+        }
+
+        size = text.length();
+        position = 0;
+        nextNonBlank = -1;
+        onlyBlankLeft = false;
+    }
+
+    //returns true if every byte is ASCII (below 0x80)
+    private static boolean isAscii(ByteBuffer bytes)
+    {
+        for(int i = 0;i < bytes.limit();i++)
+        {
+            if(bytes.get(i) < 0)
+                return false;
+        }
+        return true;
+    }
+
+    //returns true if ASCII bytes are the same characters in the charset
+    private static boolean isAsciiCompatible(Charset charset)
+    {
+        return charset.equals(StandardCharsets.US_ASCII) || charset.equals(StandardCharsets.UTF_8) ||
+                charset.equals(StandardCharsets.ISO_8859_1);
+    }
+
+    //same as Scanner.hasNext(), but looks ahead in the text without copying anything
+    //the result is remembered, so calling this repeatedly only scans each character once
+    public boolean hasNext()
+    {
+        if(nextNonBlank >= position)
+            return true;
+        if(onlyBlankLeft)
+            return false;
+
+        for(int i = position;i < size;i++)
+        {
+            if(!Character.isWhitespace(text.charAt(i)))
+            {
+                nextNonBlank = i;
+                return true;
+            }
+        }
+
+        onlyBlankLeft = true;
+        return false;
+    }
+
+    //returns the next line as a view into the text
+    //lines end with "\n", "\r\n", "\r", "\u2028", "\u2029", or "\u0085" (same as Scanner.nextLine())
+    public CharSequence nextLine()
+    {
+        int lineStart = position;
+        int lineEnd = position;
+
+        while(lineEnd < size && !isLineTerminator(text.charAt(lineEnd)))
+            lineEnd++;
+
+        //skip over the line terminator
+        position = lineEnd;
+        if(position + 1 < size && text.charAt(position) == '\r' && text.charAt(position + 1) == '\n')
+            position += 2;
+        else if(position < size)
+            position++;
+
+        return new Line(lineStart, lineEnd - lineStart);
+    }
+
+    private static boolean isLineTerminator(char c)
+    {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029' || c == '\u0085';
+    }
+
+    //a single line of the file that reads straight from the text
+    private class Line implements CharSequence
+    {
+        private final int start;
+        private final int length;
+
+        public Line(int start, int length)
+        {
+            this.start = start;
+            this.length = length;
+        }
+
+        public int length()
+        {
+            return length;
+        }
+
+        public char charAt(int index)
+        {
+            return text.charAt(start + index);
+        }
+
+        //this is only used to get the value of a token, so copy straight into a String
+        public CharSequence subSequence(int startIndex, int endIndex)
+        {
+            return text.subSequence(start + startIndex, start + endIndex).toString();
+        }
+
+        public String toString()
+        {
+            return subSequence(0, length).toString();
+        }
+    }
+}
+
+/*
+The characters of a mapped file that is all ASCII, where each byte is one character
+ */
+class MappedAscii implements CharSequence
+{
+    private final ByteBuffer bytes;
+
+    public MappedAscii(ByteBuffer mappedBytes)
+    {
+        bytes = mappedBytes;
+    }
+
+    public int length()
+    {
+        return bytes.limit();
+    }
+
+    public char charAt(int index)
+    {
+        return (char) bytes.get(index);
+    }
+
+    //copies straight into a String
+    public CharSequence subSequence(int start, int end)
+    {
+        byte[] chars = new byte[end - start];
+        bytes.get(start, chars);
+        return new String(chars, StandardCharsets.US_ASCII);
+    }
+
+    public String toString()
+    {
+        return subSequence(0, length()).toString();
+    }
+}
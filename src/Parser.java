@@ -1,5 +1,3 @@
-import java.util.List;
-
 class InvalidTokenException extends Exception
 {
     public InvalidTokenException(String message)
@@ -10,30 +8,39 @@ class InvalidTokenException extends Exception
 
 public class Parser
 {
-    private List<Token> tokenStream;
+    private TokenBuffer tokenStream;
     private int tokenCount;
-    private SyntaxTree cst;
+    private SyntaxTree cst; //only built if buildCST is true, otherwise null
+    private SyntaxTree ast;
+    private final boolean buildCST;
     private int errors;
     private int programNum;
+    private final Log log;
 
-    public Parser()
+    //log is where all the messages from parsing are printed
+    //the AST is always built while parsing, but the CST is only built if it will be printed
+    public Parser(Log outputLog, boolean createCST)
     {
+        log = outputLog;
+        buildCST = createCST;
         reset();
     }
 
-    //resets the tokenStream, the cst, and related variables for the next program
+    //resets the tokenStream, the trees, and related variables for the next program
     public void reset()
     {
         tokenStream = null;
         tokenCount = 0;
-        cst = new SyntaxTree();
+        cst = buildCST ? new SyntaxTree() : null;
+        ast = new SyntaxTree();
         errors = 0;
         programNum = 0;
     }
 
     //Tries to parse the program given by the list of tokens
     //If the parse fails, an exception will be thrown in recursive descent and caught here
-    public SyntaxTree tryParseProgram(List<Token> tokens, int program, boolean hadPrevError)
+    //Returns the AST of the program, or null if the parse failed
+    public SyntaxTree tryParseProgram(TokenBuffer tokens, int program, boolean hadPrevError)
     {
         //reset all the necessary values
         reset();
@@ -45,41 +52,48 @@ public class Parser
         //before doing anything, if lex had an error, skip parsing and CST
         if(hadPrevError)
         {
-            System.out.println("Parse for Program " + program + " skipped due to previous errors");
+            log.message(LogLevel.INFO, "Parse for Program " + program + " skipped due to previous errors");
             errors++;
             return null;
         }
 
         try
         {
-            System.out.println("INFO Parser - Parsing program " + program);
-            System.out.println("INFO Parser - parse()");
+            if(log.isEnabled(LogLevel.INFO))
+                log.info("Parser", "Parsing program " + program);
+            log.info("Parser", "parse()");
             parseProgram();
-            System.out.println("INFO Parser - Parse completed with 0 errors");
+            log.info("Parser", "Parse completed with 0 errors");
         }
         catch (InvalidTokenException e)
         {
             //if the parse fails, it will end up here
             errors++;
-            System.out.println("ERROR Parser - " + e.getMessage());
-            System.out.println("ERROR Parser - Parse failed with " + errors + " error(s)");
+            log.error("Parser", e.getMessage());
+            log.error("Parser", "Parse failed with " + errors + " error(s)");
 
-            //dump whatever partial tree was created
+            //dump whatever partial trees were created
             cst = null;
+            ast = null;
         }
 
-        return cst;
+        return ast;
     }
 
+    //only prints anything if the parser was made to build the CST
     public void printCST()
     {
+        if(!buildCST)
+            return;
+
         if(errors == 0)
         {
-            System.out.println("CST for program " + programNum);
-            System.out.println(cst.treeToString());
+            log.println("CST for program " + programNum);
+            cst.printTree(log);
+            log.println();
         }
         else
-            System.out.println("CST for Program " + programNum + " skipped due to previous errors");
+            log.println("CST for Program " + programNum + " skipped due to previous errors");
     }
 
     //Returns true if the last program parsed had an error, false otherwise
@@ -93,8 +107,10 @@ public class Parser
     // ::== Block $
     private void parseProgram() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseProgram()");
-        cst.addRootNode(NodeType.PROGRAM, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseProgram()");
+        if(cst != null)
+            cst.addRootNode(NodeType.PROGRAM, currentLocation());
+        ast.addRootNode(NodeType.PROGRAM, currentLocation());
         parseBlock();
         match(true, false, TokenType.EOP);
     }
@@ -102,39 +118,49 @@ public class Parser
     // ::== { StatementList }
     private void parseBlock() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseBlock()");
-        cst.addBranchNode(NodeType.BLOCK, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseBlock()");
+        addCSTBranch(NodeType.BLOCK);
+        ast.addBranchNode(NodeType.BLOCK, currentLocation());
         match(true, false, TokenType.L_BRACE);
         parseStatementList();
         match(true, false, TokenType.R_BRACE);
-        cst.moveUp();
+        ast.moveUp();
+        moveCSTUp();
     }
 
     // ::== Statement StatementList
     // ::== epsilon
+    //parsed with a loop instead of recursion, so a block with any number of statements doesn't use up the stack
+    //(in the CST, each StatementList is still the child of the one before it)
     private void parseStatementList() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseStatementList()");
-        cst.addBranchNode(NodeType.STATEMENT_LIST, tokenStream.get(tokenCount).getLocation());
-        TokenType nextToken = match(false, true,
-                TokenType.PRINT_KEY,
-                TokenType.ID,
-                TokenType.VAR_TYPE,
-                TokenType.WHILE_KEY,
-                TokenType.IF_KEY,
-                TokenType.L_BRACE);
-
-        if(nextToken != TokenType.DEFAULT)
-        {
-            parseStatement();
-            parseStatementList();
-        }
-        else
+        int listCount = 0;
+
+        while(true)
         {
+            log.info("Parser", "parseStatementList()");
+            addCSTBranch(NodeType.STATEMENT_LIST);
+            listCount++;
+
+            TokenType nextToken = match(false, true,
+                    TokenType.PRINT_KEY,
+                    TokenType.ID,
+                    TokenType.VAR_TYPE,
+                    TokenType.WHILE_KEY,
+                    TokenType.IF_KEY,
+                    TokenType.L_BRACE);
+
             //epsilon production
             //TokenType was default, which means the next token did not match any valid Statement
+            if(nextToken == TokenType.DEFAULT)
+                break;
+
+            parseStatement();
         }
-        cst.moveUp();
+
+        //move back up past every StatementList
+        for(int i = 0;i < listCount;i++)
+            moveCSTUp();
     }
 
     // ::== PrintStatement
@@ -145,8 +171,8 @@ public class Parser
     // ::== Block
     private void parseStatement() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseStatement()");
-        cst.addBranchNode(NodeType.STATEMENT, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseStatement()");
+        addCSTBranch(NodeType.STATEMENT);
         switch (match(false, false,
             TokenType.PRINT_KEY,
             TokenType.ID,
@@ -186,62 +212,74 @@ public class Parser
                 break;
             }
         }
-        cst.moveUp();
+        moveCSTUp();
     }
 
     // ::== print ( Expr )
     private void parsePrintStatement() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parsePrintStatement()");
-        cst.addBranchNode(NodeType.PRINT_STATEMENT, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parsePrintStatement()");
+        addCSTBranch(NodeType.PRINT_STATEMENT);
+        ast.addBranchNode(NodeType.PRINT_STATEMENT, currentLocation());
         match(true, false, TokenType.PRINT_KEY);
         match(true, false, TokenType.L_PAREN);
         parseExpr();
         match(true, false, TokenType.R_PAREN);
-        cst.moveUp();
+        ast.moveUp();
+        moveCSTUp();
     }
 
     // ::== Id = Expr
     private void parseAssignStatement() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseAssignmentStatement()");
-        cst.addBranchNode(NodeType.ASSIGNMENT_STATEMENT, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseAssignmentStatement()");
+        addCSTBranch(NodeType.ASSIGNMENT_STATEMENT);
+        ast.addBranchNode(NodeType.ASSIGNMENT_STATEMENT, currentLocation());
         parseId();
         match(true, false, TokenType.ASSIGN);
         parseExpr();
-        cst.moveUp();
+        ast.moveUp();
+        moveCSTUp();
     }
 
     // ::== type Id
     private void parseVarDeclStatement() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseVarDecl()");
-        cst.addBranchNode(NodeType.VAR_DECL, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseVarDecl()");
+        addCSTBranch(NodeType.VAR_DECL);
+        ast.addBranchNode(NodeType.VAR_DECL, currentLocation());
+        int varType = tokenCount;
         match(true, false, TokenType.VAR_TYPE);
+        ast.addLeafNode(tokenStream.get(varType));
         parseId();
-        cst.moveUp();
+        ast.moveUp();
+        moveCSTUp();
     }
 
     // ::== while BooleanExpr Block
     private void parseWhileStatement() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseWhileStatement()");
-        cst.addBranchNode(NodeType.WHILE_STATEMENT, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseWhileStatement()");
+        addCSTBranch(NodeType.WHILE_STATEMENT);
+        ast.addBranchNode(NodeType.WHILE_STATEMENT, currentLocation());
         match(true, false, TokenType.WHILE_KEY);
         parseBooleanExpr();
         parseBlock();
-        cst.moveUp();
+        ast.moveUp();
+        moveCSTUp();
     }
 
     // ::== if BooleanExpr Block
     private void parseIfStatement() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseIfStatement()");
-        cst.addBranchNode(NodeType.IF_STATEMENT, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseIfStatement()");
+        addCSTBranch(NodeType.IF_STATEMENT);
+        ast.addBranchNode(NodeType.IF_STATEMENT, currentLocation());
         match(true, false, TokenType.IF_KEY);
         parseBooleanExpr();
         parseBlock();
-        cst.moveUp();
+        ast.moveUp();
+        moveCSTUp();
     }
 
     // ::== IntExpr
@@ -250,8 +288,8 @@ public class Parser
     // ::== Id
     private void parseExpr() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseExpr()");
-        cst.addBranchNode(NodeType.EXPR, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseExpr()");
+        addCSTBranch(NodeType.EXPR);
         switch(match(false, false,
                 TokenType.DIGIT,
                 TokenType.QUOTE,
@@ -280,87 +318,149 @@ public class Parser
                 break;
             }
         }
-        cst.moveUp();
+        moveCSTUp();
     }
 
     // ::== digit intop Expr
     // ::== digit
     private void parseIntExpr() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseIntExpr()");
-        cst.addBranchNode(NodeType.INT_EXPR, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseIntExpr()");
+        addCSTBranch(NodeType.INT_EXPR);
+        int digit = tokenCount;
         match(true, false, TokenType.DIGIT);
 
         //if the next token is an intop, it is consumed, otherwise it (and the following if statement) is skipped
+        Location intOp = currentLocation();
         TokenType nextToken = match(true, true, TokenType.ADDITION);
         if(nextToken == TokenType.ADDITION)
+        {
+            //in the AST, the digit and the rest of the expression are both under the addition
+            ast.addBranchNode(NodeType.ADDITION, intOp);
+            ast.addLeafNode(tokenStream.get(digit));
             parseExpr();
-        cst.moveUp();
+            ast.moveUp();
+        }
+        else
+        {
+            ast.addLeafNode(tokenStream.get(digit));
+        }
+        moveCSTUp();
     }
 
     // ::== " CharList "
     private void parseStringExpr() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseStringExpr()");
-        cst.addBranchNode(NodeType.STRING_EXPR, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseStringExpr()");
+        addCSTBranch(NodeType.STRING_EXPR);
+        int openQuote = tokenCount;
         match(true, false, TokenType.QUOTE);
-        parseCharList();
+
+        //the AST has the whole string (with quotes) as one token, at the location of the open quote
+        StringBuilder fullString = new StringBuilder();
+        fullString.append('"');
+        parseCharList(fullString);
+        fullString.append('"');
+
         match(true, false, TokenType.QUOTE);
-        cst.moveUp();
+        ast.addLeafNode(new Token(TokenType.STRING, fullString.toString(), tokenStream.getLine(openQuote), tokenStream.getColumn(openQuote)));
+        moveCSTUp();
     }
 
     // ::== ( Expr boolop Expr )
     // ::== boolVal
     private void parseBooleanExpr() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseBooleanExpr()");
-        cst.addBranchNode(NodeType.BOOLEAN_EXPR, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseBooleanExpr()");
+        addCSTBranch(NodeType.BOOLEAN_EXPR);
+        int firstToken = tokenCount;
         TokenType nextToken = match(true, false, TokenType.L_PAREN, TokenType.BOOL_VAL);
 
         if(nextToken == TokenType.L_PAREN)
         {
             parseExpr();
-            match(true, false, TokenType.EQUALITY, TokenType.INEQUALITY);
+
+            //the operator isn't known until after the first expression,
+            //so its AST node is put in between the first expression and the current node
+            Location boolOp = currentLocation();
+            if(match(true, false, TokenType.EQUALITY, TokenType.INEQUALITY) == TokenType.EQUALITY)
+                ast.addBranchNodeAboveLastChild(NodeType.EQUALITY, boolOp);
+            else
+                ast.addBranchNodeAboveLastChild(NodeType.INEQUALITY, boolOp);
+
             parseExpr();
             match(true, false, TokenType.R_PAREN);
+            ast.moveUp();
         }
         else
         {
-            //do nothing
             //this means the token was of type BOOL_VAL and was already consumed in the first match function
+            ast.addLeafNode(tokenStream.get(firstToken));
         }
-        cst.moveUp();
+        moveCSTUp();
     }
 
     // ::== char
     private void parseId() throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseId()");
-        cst.addBranchNode(NodeType.ID, tokenStream.get(tokenCount).getLocation());
+        log.info("Parser", "parseId()");
+        addCSTBranch(NodeType.ID);
+        int id = tokenCount;
         match(true, false, TokenType.ID);
-        cst.moveUp();
+        ast.addLeafNode(tokenStream.get(id));
+        moveCSTUp();
     }
 
     // ::== char CharList
     // ::== space CharList
     // ::== epsilon
-    private void parseCharList() throws InvalidTokenException
+    //each char is added to fullString for the AST
+    //parsed with a loop instead of recursion, so strings of any length don't use up the stack
+    //(in the CST, each CharList is still the child of the one before it)
+    private void parseCharList(StringBuilder fullString) throws InvalidTokenException
     {
-        System.out.println("INFO Parser - parseCharList()");
-        cst.addBranchNode(NodeType.CHAR_LIST, tokenStream.get(tokenCount).getLocation());
-        
-        //Token Type CHAR includes both a-z and spaces inside of strings
-        TokenType nextToken = match(true, true, TokenType.CHAR);
-        if(nextToken == TokenType.CHAR)
-        {
-            parseCharList();
-        }
-        else
+        int listCount = 0;
+
+        while(true)
         {
-            //do nothing
+            log.info("Parser", "parseCharList()");
+            addCSTBranch(NodeType.CHAR_LIST);
+            listCount++;
+
+            //Token Type CHAR includes both a-z and spaces inside of strings
+            int nextChar = tokenCount;
+            TokenType nextToken = match(true, true, TokenType.CHAR);
+
             //epsilon production
+            if(nextToken != TokenType.CHAR)
+                break;
+
+            tokenStream.appendValue(nextChar, fullString);
         }
-        cst.moveUp();
+
+        //move back up past every CharList
+        for(int i = 0;i < listCount;i++)
+            moveCSTUp();
+    }
+
+    //returns the location of the next token in the stream without consuming it
+    //the stream always ends with EOP, and nothing is ever matched past it, so this is always in bounds
+    private Location currentLocation()
+    {
+        return tokenStream.getLocation(tokenCount);
+    }
+
+    //adds a branch node to the CST (if it is being built) at the location of the next token
+    private void addCSTBranch(NodeType nodeType)
+    {
+        if(cst != null)
+            cst.addBranchNode(nodeType, currentLocation());
+    }
+
+    private void moveCSTUp()
+    {
+        if(cst != null)
+            cst.moveUp();
     }
 
     //Checks and consumes the next token in the stream or throws an error if there is no match
@@ -382,11 +482,12 @@ public class Parser
                 throw  new InvalidTokenException("Expected " + typesArrayToString(types) + " but found end of file");
 
             //if the type matches, increment the counter and return the type the token matched
-            if(tokenStream.get(tokenCount).getType() == type)
+            if(tokenStream.getType(tokenCount) == type)
             {
                 if(consumeToken)
                 {
-                    cst.addLeafNode(tokenStream.get(tokenCount));
+                    if(cst != null)
+                        cst.addLeafNode(tokenStream.get(tokenCount));
                     tokenCount++;
                 }
                 return type;
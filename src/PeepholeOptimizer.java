@@ -0,0 +1,349 @@
+import java.util.Arrays;
+
+/*
+Removes instructions that don't change what a program does from the code in a CodeBuffer
+It runs on the list of instructions before any address or branch distance is filled in,
+so removing an instruction never breaks a jump (the labels just move to the next instruction that is kept)
+
+Two passes are run until neither finds anything else to change:
+    Known values (forwards)
+        keeps track of what is known to be in each register and variable slot, and
+            removes loads of a value that is already in the register (ex. STA temp, LDA temp)
+            removes stores of a value that is already in the variable
+            turns loads of a variable that holds a known constant into loads of the constant
+            turns additions of two known constants into a load of the result
+        nothing is known at the start of each label that is jumped to, since it can be jumped to from anywhere
+    Dead stores (backwards)
+        removes stores to a variable that is stored to again before anything reads it
+        removes loads (and additions) into a register that is loaded again before anything reads it
+            (STA and ADC read the accumulator, CPX reads X, and SYS reads X and Y)
+        everything is assumed to be read after a branch, and nothing is read after the program halts
+
+Only CPX changes the Z flag on the 6502a, so loads can be removed from between a CPX and its BNE
+ */
+public class PeepholeOptimizer
+{
+    //the value used for a register or variable whose value isn't known
+    private static final int UNKNOWN = -1;
+
+    //values below this are constants (bytes, and strings in the heap from CodeBuffer.HEAP_STRING up),
+    //values at or above it are values that aren't known but are the same wherever that number is
+    //(ex. after STA temp, the accumulator and temp both hold the same value, whatever it is)
+    private static final int FIRST_UNKNOWN_VALUE = 0x10000;
+
+    private final CodeBuffer code;
+
+    private int accumulator;
+    private int xRegister;
+    private int yRegister;
+    private int[] slotValues;
+    private int nextValue;
+
+    public PeepholeOptimizer(CodeBuffer codeBuffer)
+    {
+        code = codeBuffer;
+    }
+
+    //optimizes the code, returning how many bytes were removed
+    public int optimize()
+    {
+        int startSize = code.size();
+
+        boolean changed = true;
+        while(changed)
+        {
+            changed = propagateValues();
+            changed |= removeDeadStores();
+        }
+
+        return startSize - code.size();
+    }
+
+    //the forwards pass, returns true if anything was changed
+    private boolean propagateValues()
+    {
+        int count = code.getInstructionCount();
+        boolean[] removed = new boolean[count];
+        boolean changed = false;
+
+        slotValues = new int[slotCount()];
+        nextValue = FIRST_UNKNOWN_VALUE;
+        forgetEverything();
+
+        boolean[] branchTargets = code.findBranchTargets();
+
+        for(int i = 0;i < count;i++)
+        {
+            if(branchTargets[i])
+                forgetEverything();
+
+            OpCode opCode = code.getOpCode(i);
+            int operand = code.getOperand(i);
+
+            switch(opCode)
+            {
+                case LDA_CONST:
+                {
+                    if(accumulator == operand)
+                        removed[i] = true;
+                    accumulator = operand;
+                    break;
+                }
+                case LDA_MEM:
+                {
+                    int value = slotValue(operand);
+                    if(accumulator == value)
+                        removed[i] = true;
+                    else if(value < FIRST_UNKNOWN_VALUE)
+                        code.replace(i, OpCode.LDA_CONST, value);
+                    accumulator = value;
+                    break;
+                }
+                case LDX_CONST:
+                {
+                    if(xRegister == operand)
+                        removed[i] = true;
+                    xRegister = operand;
+                    break;
+                }
+                case LDX_MEM:
+                {
+                    int value = slotValue(operand);
+                    if(xRegister == value)
+                        removed[i] = true;
+                    else if(value < FIRST_UNKNOWN_VALUE)
+                        code.replace(i, OpCode.LDX_CONST, value);
+                    xRegister = value;
+                    break;
+                }
+                case LDY_CONST:
+                {
+                    if(yRegister == operand)
+                        removed[i] = true;
+                    yRegister = operand;
+                    break;
+                }
+                case LDY_MEM:
+                {
+                    int value = slotValue(operand);
+                    if(yRegister == value)
+                        removed[i] = true;
+                    else if(value < FIRST_UNKNOWN_VALUE)
+                        code.replace(i, OpCode.LDY_CONST, value);
+                    yRegister = value;
+                    break;
+                }
+                case STA:
+                {
+                    if(accumulator == UNKNOWN)
+                        accumulator = newValue();
+
+                    if(slotValues[operand] == accumulator)
+                        removed[i] = true;
+                    slotValues[operand] = accumulator;
+                    break;
+                }
+                case ADC:
+                {
+                    int value = slotValue(operand);
+                    if(isNumber(accumulator) && isNumber(value))
+                    {
+                        //the 6502a has no carry, so the sum just wraps around
+                        accumulator = (accumulator + value) & 0xFF;
+                        code.replace(i, OpCode.LDA_CONST, accumulator);
+                    }
+                    else
+                    {
+                        accumulator = newValue();
+                    }
+                    break;
+                }
+                case INC:
+                {
+                    int value = slotValue(operand);
+                    slotValues[operand] = isNumber(value) ? (value + 1) & 0xFF : newValue();
+                    break;
+                }
+                case NOP:
+                {
+                    removed[i] = true;
+                    break;
+                }
+                default:
+                {
+                    //CPX, BNE, SYS, and BRK don't change any register or variable
+                    break;
+                }
+            }
+
+            changed |= removed[i];
+        }
+
+        code.remove(removed);
+        return changed;
+    }
+
+    //the backwards pass, returns true if anything was changed
+    private boolean removeDeadStores()
+    {
+        int count = code.getInstructionCount();
+        boolean[] removed = new boolean[count];
+        boolean changed = false;
+
+        //dead[slot] is true if the slot is stored to again before it is read
+        boolean[] dead = new boolean[slotCount()];
+
+        //the same for each register (after the last instruction, anything might be read)
+        boolean accumulatorDead = false;
+        boolean xRegisterDead = false;
+        boolean yRegisterDead = false;
+
+        for(int i = count - 1;i >= 0;i--)
+        {
+            OpCode opCode = code.getOpCode(i);
+            int operand = code.getOperand(i);
+
+            switch(opCode)
+            {
+                case STA:
+                {
+                    if(dead[operand])
+                    {
+                        removed[i] = true;
+                        break;
+                    }
+                    dead[operand] = true;
+                    accumulatorDead = false;
+                    break;
+                }
+                case LDA_CONST:
+                case LDA_MEM:
+                case ADC:
+                {
+                    //the accumulator is overwritten before it is read, so nothing here is used
+                    if(accumulatorDead)
+                    {
+                        removed[i] = true;
+                        break;
+                    }
+                    if(opCode != OpCode.LDA_CONST)
+                        dead[operand] = false;
+                    //ADC adds to the accumulator, so it still needs the one before it
+                    accumulatorDead = opCode != OpCode.ADC;
+                    break;
+                }
+                case LDX_CONST:
+                case LDX_MEM:
+                {
+                    if(xRegisterDead)
+                    {
+                        removed[i] = true;
+                        break;
+                    }
+                    if(opCode == OpCode.LDX_MEM)
+                        dead[operand] = false;
+                    xRegisterDead = true;
+                    break;
+                }
+                case LDY_CONST:
+                case LDY_MEM:
+                {
+                    if(yRegisterDead)
+                    {
+                        removed[i] = true;
+                        break;
+                    }
+                    if(opCode == OpCode.LDY_MEM)
+                        dead[operand] = false;
+                    yRegisterDead = true;
+                    break;
+                }
+                case CPX:
+                {
+                    dead[operand] = false;
+                    xRegisterDead = false;
+                    break;
+                }
+                case INC:
+                {
+                    dead[operand] = false;
+                    break;
+                }
+                case SYS:
+                {
+                    xRegisterDead = false;
+                    yRegisterDead = false;
+                    break;
+                }
+                case BNE:
+                {
+                    //the code that is jumped to might read anything
+                    Arrays.fill(dead, false);
+                    accumulatorDead = false;
+                    xRegisterDead = false;
+                    yRegisterDead = false;
+                    break;
+                }
+                case BRK:
+                {
+                    //nothing is read once the program halts
+                    Arrays.fill(dead, true);
+                    accumulatorDead = true;
+                    xRegisterDead = true;
+                    yRegisterDead = true;
+                    break;
+                }
+                default:
+                {
+                    break;
+                }
+            }
+
+            changed |= removed[i];
+        }
+
+        code.remove(removed);
+        return changed;
+    }
+
+    //forgets the values of every register and variable
+    private void forgetEverything()
+    {
+        accumulator = UNKNOWN;
+        xRegister = UNKNOWN;
+        yRegister = UNKNOWN;
+        Arrays.fill(slotValues, UNKNOWN);
+    }
+
+    //returns the value in a variable slot, giving it a new value if it isn't known (so later reads can match it)
+    private int slotValue(int slot)
+    {
+        if(slotValues[slot] == UNKNOWN)
+            slotValues[slot] = newValue();
+        return slotValues[slot];
+    }
+
+    //returns true if the value is a known byte (and not a string or unknown), so it can be added to
+    private static boolean isNumber(int value)
+    {
+        return value >= 0 && value < CodeBuffer.HEAP_STRING;
+    }
+
+    private int newValue()
+    {
+        nextValue++;
+        return nextValue - 1;
+    }
+
+    //returns one more than the highest variable slot used by the code
+    private int slotCount()
+    {
+        int slots = 0;
+        for(int i = 0;i < code.getInstructionCount();i++)
+        {
+            if(code.getOpCode(i).getSize() == 3)
+                slots = Math.max(slots, code.getOperand(i) + 1);
+        }
+        return slots;
+    }
+}
@@ -0,0 +1,73 @@
+import java.util.TreeMap;
+
+/*
+Prints where a program spent its cycles after it was run in the Emulator (-profile)
+
+Uses the SourceMap from code generation to add up what ran at each address into
+    each source line: how many instructions ran for it, and how many cycles they took
+    each while loop: how many times its block ran, and how many cycles were spent anywhere in its code
+        (including the condition, and any loops inside it)
+ */
+public class Profiler
+{
+    private final Log log;
+
+    public Profiler(Log outputLog)
+    {
+        log = outputLog;
+    }
+
+    public void printProfile(int programNum, SourceMap sourceMap, Emulator emulator)
+    {
+        long totalCycles = Math.max(emulator.getCycles(), 1);
+
+        //the instructions run and cycles for each line, in line order
+        TreeMap<Integer, long[]> lines = new TreeMap<Integer, long[]>();
+        for(int address = 0;address < sourceMap.size();address++)
+        {
+            Location location = sourceMap.getLocation(address);
+            if(location == null || emulator.getExecutionsAt(address) == 0)
+                continue;
+
+            long[] line = lines.computeIfAbsent(location.getLine(), key -> new long[2]);
+            line[0] += emulator.getExecutionsAt(address);
+            line[1] += emulator.getCyclesAt(address);
+        }
+
+        log.println("Profile for Program " + programNum + ":");
+        log.println("_____________________________________");
+        log.println("Line  Instructions  Cycles    Cycle %");
+        log.println("_____________________________________");
+        for(int line : lines.keySet())
+        {
+            long[] counts = lines.get(line);
+            printColumn(String.valueOf(line), 6);
+            printColumn(String.valueOf(counts[0]), 14);
+            printColumn(String.valueOf(counts[1]), 10);
+            log.println(percent(counts[1], totalCycles));
+        }
+
+        for(LoopRange loop : sourceMap.getLoops())
+        {
+            long loopCycles = 0;
+            for(int address = loop.getStart();address < loop.getEnd();address++)
+                loopCycles += emulator.getCyclesAt(address);
+
+            log.println("Loop at " + loop.getLocation() + ": block ran " + emulator.getExecutionsAt(loop.getBody()) + " times, "
+                    + loopCycles + " cycles (" + percent(loopCycles, totalCycles) + ")");
+        }
+    }
+
+    private static String percent(long cycles, long totalCycles)
+    {
+        return String.format("%.1f%%", 100.0 * cycles / totalCycles);
+    }
+
+    //prints the value left aligned in a column of the given width (same as String.format("%-<width>s", value))
+    private void printColumn(String value, int width)
+    {
+        log.print(value);
+        for(int i = value.length();i < width;i++)
+            log.print(" ");
+    }
+}
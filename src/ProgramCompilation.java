@@ -0,0 +1,198 @@
+import java.io.StringWriter;
+import java.io.Writer;
+
+/*
+Everything needed to compile a single program from the input file
+Each program gets its own Parser, SemanticAnalyzer, and CodeGenerator, and prints to its own log,
+so different programs can be compiled on different threads at the same time
+
+Lexing still has to happen in order (the Lexer is what finds where each program ends),
+so lex() is called from one thread, and then compile() can be called from any thread
+
+With a CompilationCache, compile() first looks for the program in the cache, and if it is there,
+prints what was printed when it was compiled instead of running any of the stages again
+ */
+public class ProgramCompilation
+{
+    private final Log log;
+    private final CompilerOptions options;
+    private final CompilationCache cache;
+
+    private TokenBuffer tokens;
+    private int programNum;
+    private boolean lexError;
+    private byte[] executable;
+
+    //log is where everything about this program is printed
+    public ProgramCompilation(Log outputLog, CompilerOptions compilerOptions)
+    {
+        this(outputLog, compilerOptions, null);
+    }
+
+    //the same, but with a cache of programs that were already compiled (or null to always compile)
+    public ProgramCompilation(Log outputLog, CompilerOptions compilerOptions, CompilationCache compilationCache)
+    {
+        log = outputLog;
+        options = compilerOptions;
+        cache = compilationCache;
+    }
+
+    //lexes the next program from the lexer, with the Lexer's messages going to this program's log
+    public void lex(Lexer lexer)
+    {
+        lexer.setLog(log);
+        tokens = lexer.getNextProgram();
+        programNum = lexer.getProgramCount();
+        lexError = lexer.hasError();
+        log.blankLine();
+    }
+
+    //returns the executable made by compile(), or null if code generation failed
+    public byte[] getExecutable()
+    {
+        return executable;
+    }
+
+    //runs the rest of the stages on the lexed program, then prints the CST, AST, Symbol Table, and executable
+    //(and runs the executable, if the options say to)
+    public void compile()
+    {
+        if(cache == null)
+        {
+            compile(log);
+            return;
+        }
+
+        String key = cache.makeKey(tokens, lexError, options, log);
+        CachedProgram cached = cache.get(key, tokens, programNum);
+        if(cached != null)
+        {
+            log.print(cached.getOutput());
+            executable = cached.getExecutable();
+            return;
+        }
+
+        //compiled into a buffer, so the same output can be printed and cached
+        StringWriter output = new StringWriter();
+        Log bufferLog = log.withOutput(output);
+        compile(bufferLog);
+        bufferLog.flush();
+
+        log.print(output.toString());
+        //a profile prints the line numbers of the program on their own, so it is only reused in the same place
+        cache.put(key, tokens, programNum, output.toString(), executable, !options.profileExecutables());
+    }
+
+    //compiles the program, printing to the given log (which is either this program's log, or a buffer to cache)
+    private void compile(Log log)
+    {
+        //the CST is only needed to print it
+        Parser parser = new Parser(log, !log.isCompact());
+        SemanticAnalyzer analyzer = new SemanticAnalyzer(log);
+        CodeGenerator generator = new CodeGenerator(log, options.optimizeCode());
+
+        SyntaxTree parsedAST = parser.tryParseProgram(tokens, programNum, lexError);
+        log.blankLine();
+
+        SyntaxTree ast = analyzer.tryAnalyzeProgram(parsedAST, programNum, lexError | parser.hasError());
+        log.blankLine();
+
+        //optimizations on the AST only run on programs that passed analysis
+        boolean hadError = lexError | parser.hasError() | analyzer.hasError();
+        int bytesWithDeadCode = 0;
+        if(options.optimizeCode() && !hadError)
+        {
+            new ConstantFolder(log).foldProgram(ast);
+
+            //a copy of the tree with its dead code still in it is only kept to report how many bytes removing it saved
+            SyntaxTree withDeadCode = log.isEnabled(LogLevel.INFO) ? ast.copy() : null;
+            if(new DeadCodeEliminator(log).eliminate(ast) > 0 && withDeadCode != null)
+                bytesWithDeadCode = measureBytesUsed(withDeadCode);
+        }
+
+        generator.tryCodeGeneration(ast, programNum, hadError);
+        if(bytesWithDeadCode > 0 && !generator.hasError())
+            log.info("Optimizer", "Dead code elimination saved " + (bytesWithDeadCode - generator.getBytesUsed()) + " bytes");
+        log.blankLine();
+
+        //print CST, AST, and SymbolTable (compact mode only prints the executable)
+        if(!log.isCompact())
+        {
+            parser.printCST();
+            analyzer.printAST();
+            analyzer.printSymbolTable();
+        }
+        generator.printExecutable();
+        log.blankLine();
+
+        if(!generator.hasError())
+            executable = generator.getExecutable();
+
+        if(options.runExecutables() && executable != null)
+        {
+            runExecutable(log, executable, options.profileExecutables() ? generator.getSourceMap() : null);
+            log.blankLine();
+        }
+
+        //the JVM class isn't limited to 256 bytes, so it is made even if the executable ran out of memory
+        if(options.compileToJvm())
+        {
+            JvmCodeGenerator jvmGenerator = new JvmCodeGenerator(log);
+            jvmGenerator.tryCodeGeneration(ast, programNum, hadError);
+            if(!jvmGenerator.hasError())
+                runJvmProgram(log, jvmGenerator.newProgram());
+            log.blankLine();
+        }
+    }
+
+    //runs the program compiled to a JVM class, and prints what it printed
+    private void runJvmProgram(Log log, JvmProgram program)
+    {
+        ExecutionResult result = program.run();
+
+        log.println("JVM Output: " + program.getOutput());
+
+        if(result != ExecutionResult.HALTED)
+            log.warn("JVM", "Program " + programNum + " was stopped after too many loops");
+    }
+
+    //runs the executable in the emulator and prints what it printed, and how long it took
+    //(and where the cycles went, if there is a source map to profile it with)
+    private void runExecutable(Log log, byte[] executable, SourceMap sourceMap)
+    {
+        //profiling needs the counts the Emulator keeps for each address, so only plain runs are translated
+        ExecutableRunner runner;
+        Emulator emulator = null;
+        if(options.translateExecutables() && sourceMap == null)
+        {
+            ExecutableTranslator translator = new ExecutableTranslator(executable);
+            if(!translator.translate())
+                log.warn("Translator", "Program " + programNum + " changes its own code, so it was emulated instead of translated");
+            runner = translator.newRunner();
+        }
+        else
+        {
+            emulator = new Emulator(executable);
+            runner = emulator;
+        }
+
+        ExecutionResult result = runner.run();
+
+        log.println("Output: " + runner.getOutput());
+        log.println("Ran " + runner.getInstructionCount() + " instructions in " + runner.getCycles() + " cycles");
+
+        if(result != ExecutionResult.HALTED)
+            log.warn("Emulator", "Program " + programNum + " stopped without halting: " + result);
+
+        if(sourceMap != null)
+            new Profiler(log).printProfile(programNum, sourceMap, emulator);
+    }
+
+    //generates code for the tree without printing anything, and returns how many bytes of the executable it needs
+    private int measureBytesUsed(SyntaxTree ast)
+    {
+        CodeGenerator generator = new CodeGenerator(new Log(Writer.nullWriter(), LogLevel.ERROR, true), options.optimizeCode());
+        generator.tryCodeGeneration(ast, programNum, false);
+        return generator.getBytesUsed();
+    }
+}
@@ -0,0 +1,453 @@
+import java.io.FileNotFoundException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+Generates random programs in the language, for testing how the compiler handles large or oddly shaped inputs
+
+The same seed and settings always make the same programs, so benchmark runs can be repeated
+Bigger settings quickly make programs that don't fit in the 256 byte executable, which only fails in code gen
+The shape of the programs is set by:
+    nesting depth       - how many blocks deep each program goes (every level is a block, if, or while)
+    declarations        - how many ints, strings, and booleans are declared in each scope
+    addition length     - how many digits are in each int expression (ex. 3 is 1 + 2 + 3)
+    boolean nesting     - how many == and != are nested in each boolean expression (ex. 2 is ((1 == 2) != true))
+    string length       - how many characters are in each string literal
+    programs            - how many programs are in the file
+    invalid percent     - the chance that a program has a lex, parse, or semantic error put into it
+
+Usage: java ProgramGenerator [-seed=<n>] [-depth=<n>] [-declarations=<n>] [-additions=<n>] [-booleans=<n>]
+                             [-strings=<n>] [-programs=<n>] [-invalid=<percent>] [outputFile]
+ */
+public class ProgramGenerator
+{
+    private static final String[] TYPES = {"int", "string", "boolean"};
+
+    private final Random random;
+
+    private int nestingDepth;
+    private int declarationsPerScope;
+    private int additionLength;
+    private int booleanNesting;
+    private int stringLength;
+    private int programCount;
+    private int invalidPercent;
+
+    //the variables declared in each scope that is currently open (innermost last), with their types
+    private List<List<String>> scopeIds;
+    private List<List<String>> scopeTypes;
+
+    public ProgramGenerator(long seed)
+    {
+        random = new Random(seed);
+
+        //by default, make one small valid program that (usually) fits in the 256 byte executable
+        nestingDepth = 1;
+        declarationsPerScope = 1;
+        additionLength = 1;
+        booleanNesting = 1;
+        stringLength = 4;
+        programCount = 1;
+        invalidPercent = 0;
+    }
+
+    public void setNestingDepth(int depth)
+    {
+        nestingDepth = depth;
+    }
+
+    //each scope can only have 25 different ids (see declare()), so there can be at most 8 of each type
+    public void setDeclarationsPerScope(int declarations)
+    {
+        declarationsPerScope = Math.min(declarations, 25 / TYPES.length);
+    }
+
+    public void setAdditionLength(int length)
+    {
+        additionLength = Math.max(length, 1);
+    }
+
+    public void setBooleanNesting(int nesting)
+    {
+        booleanNesting = nesting;
+    }
+
+    public void setStringLength(int length)
+    {
+        stringLength = length;
+    }
+
+    public void setProgramCount(int count)
+    {
+        programCount = count;
+    }
+
+    public void setInvalidPercent(int percent)
+    {
+        invalidPercent = percent;
+    }
+
+    public static void main(String[] args)
+    {
+        long seed = 0;
+        String fileName = null;
+        List<String> settings = new ArrayList<String>();
+
+        for(String arg : args)
+        {
+            if(arg.startsWith("-seed="))
+                seed = Long.parseLong(arg.substring("-seed=".length()));
+            else if(arg.startsWith("-"))
+                settings.add(arg);
+            else
+                fileName = arg;
+        }
+
+        ProgramGenerator generator = new ProgramGenerator(seed);
+        for(String setting : settings)
+        {
+            int value = Integer.parseInt(setting.substring(setting.indexOf('=') + 1));
+
+            if(setting.startsWith("-depth="))
+                generator.setNestingDepth(value);
+            else if(setting.startsWith("-declarations="))
+                generator.setDeclarationsPerScope(value);
+            else if(setting.startsWith("-additions="))
+                generator.setAdditionLength(value);
+            else if(setting.startsWith("-booleans="))
+                generator.setBooleanNesting(value);
+            else if(setting.startsWith("-strings="))
+                generator.setStringLength(value);
+            else if(setting.startsWith("-programs="))
+                generator.setProgramCount(value);
+            else if(setting.startsWith("-invalid="))
+                generator.setInvalidPercent(value);
+        }
+
+        try
+        {
+            PrintStream output = fileName == null ? System.out : new PrintStream(fileName);
+            output.print(generator.generate());
+            output.flush();
+        }
+        catch(FileNotFoundException e)
+        {
+            System.out.println("Could not write to " + fileName);
+        }
+    }
+
+    //makes the text of a whole file, with every program separated by $
+    public String generate()
+    {
+        StringBuilder file = new StringBuilder();
+
+        for(int i = 0;i < programCount;i++)
+        {
+            file.append("/* Program ").append(i).append(" */\n");
+
+            String program = generateProgram();
+            if(random.nextInt(100) < invalidPercent)
+                program = makeInvalid(program);
+
+            file.append(program);
+        }
+
+        return file.toString();
+    }
+
+    //makes one valid program, ending with $
+    public String generateProgram()
+    {
+        scopeIds = new ArrayList<List<String>>();
+        scopeTypes = new ArrayList<List<String>>();
+
+        StringBuilder program = new StringBuilder();
+        generateBlock(program, nestingDepth, 0);
+        program.append("$\n");
+        return program.toString();
+    }
+
+    /*---------------------------------------- Statements ----------------------------------------*/
+
+    //makes a block that declares, assigns, and prints variables, and then nests depth more blocks inside of it
+    private void generateBlock(StringBuilder program, int depth, int indent)
+    {
+        openScope();
+        line(program, indent, "{");
+
+        //declare the variables for this scope, with each type mixed in random order
+        List<String> types = new ArrayList<String>();
+        for(int i = 0;i < declarationsPerScope;i++)
+        {
+            for(String type : TYPES)
+                types.add(type);
+        }
+        shuffle(types);
+
+        for(String type : types)
+            line(program, indent + 1, type + " " + declare(type));
+
+        //assign every variable that was just declared
+        List<String> ids = scopeIds.get(scopeIds.size() - 1);
+        List<String> idTypes = scopeTypes.get(scopeTypes.size() - 1);
+        for(int i = 0;i < ids.size();i++)
+            line(program, indent + 1, ids.get(i) + " = " + generateExpr(idTypes.get(i)));
+
+        line(program, indent + 1, "print(" + generateExpr(TYPES[random.nextInt(TYPES.length)]) + ")");
+
+        //nest the next block as a plain block, an if, or a while
+        if(depth > 0)
+        {
+            switch(random.nextInt(3))
+            {
+                case 0:
+                {
+                    generateBlock(program, depth - 1, indent + 1);
+                    break;
+                }
+                case 1:
+                {
+                    indentLine(program, indent + 1);
+                    program.append("if ").append(generateBooleanExpr(booleanNesting)).append("\n");
+                    generateBlock(program, depth - 1, indent + 1);
+                    break;
+                }
+                case 2:
+                {
+                    indentLine(program, indent + 1);
+                    program.append("while ").append(generateBooleanExpr(booleanNesting)).append("\n");
+                    generateBlock(program, depth - 1, indent + 1);
+                    break;
+                }
+            }
+        }
+
+        //use something from an outer scope after the nested block, if there is anything
+        String id = findId(TYPES[random.nextInt(TYPES.length)]);
+        if(id != null)
+            line(program, indent + 1, "print(" + id + ")");
+
+        line(program, indent, "}");
+        closeScope();
+    }
+
+    /*---------------------------------------- Expressions ----------------------------------------*/
+
+    //makes an expression of the given type
+    private String generateExpr(String type)
+    {
+        switch(type)
+        {
+            case "int":
+                return generateIntExpr();
+            case "string":
+                return generateStringExpr();
+            default:
+                return generateBooleanOperand(booleanNesting);
+        }
+    }
+
+    //makes a chain of additions with additionLength digits, where the last one might be an int variable
+    private String generateIntExpr()
+    {
+        StringBuilder expr = new StringBuilder();
+        for(int i = 0;i < additionLength - 1;i++)
+            expr.append(random.nextInt(10)).append(" + ");
+
+        String id = random.nextBoolean() ? findId("int") : null;
+        if(id != null && additionLength > 1)
+            expr.append(id); //IntExpr is digit + Expr, so only a chain can end with an id
+        else
+            expr.append(random.nextInt(10));
+
+        return expr.toString();
+    }
+
+    //makes a string literal of stringLength lowercase letters and spaces, or uses a string variable
+    private String generateStringExpr()
+    {
+        String id = random.nextInt(4) == 0 ? findId("string") : null;
+        if(id != null)
+            return id;
+
+        StringBuilder expr = new StringBuilder();
+        expr.append('"');
+        for(int i = 0;i < stringLength;i++)
+            expr.append(random.nextInt(6) == 0 ? ' ' : (char) ('a' + random.nextInt(26)));
+        expr.append('"');
+
+        return expr.toString();
+    }
+
+    //makes a comparison with nesting levels of == and != (ex. 2 makes ((1 == 2) != true)), or a boolean literal if nesting is 0
+    //if and while conditions have to be one of these, since an id on its own is not a BooleanExpr
+    private String generateBooleanExpr(int nesting)
+    {
+        if(nesting <= 0)
+            return random.nextBoolean() ? "true" : "false";
+
+        String op = random.nextBoolean() ? " == " : " != ";
+
+        //the innermost comparison can compare ints or strings instead of booleans
+        if(nesting == 1 && random.nextBoolean())
+        {
+            String type = random.nextBoolean() ? "int" : "string";
+            return "(" + generateExpr(type) + op + generateExpr(type) + ")";
+        }
+
+        //one side is nested all the way down, and the other side is nested a random amount less
+        String nested = generateBooleanOperand(nesting - 1);
+        String other = generateBooleanOperand(random.nextInt(nesting));
+
+        if(random.nextBoolean())
+            return "(" + nested + op + other + ")";
+        else
+            return "(" + other + op + nested + ")";
+    }
+
+    //same as generateBooleanExpr, except at the bottom it can also be a boolean variable
+    private String generateBooleanOperand(int nesting)
+    {
+        String id = nesting <= 0 && random.nextBoolean() ? findId("boolean") : null;
+        if(id != null)
+            return id;
+
+        return generateBooleanExpr(nesting);
+    }
+
+    /*---------------------------------------- Invalid Programs ----------------------------------------*/
+
+    //puts one random error into a valid program
+    private String makeInvalid(String program)
+    {
+        //don't put anything into the $ at the end
+        int position = random.nextInt(program.length() - 2);
+
+        switch(random.nextInt(4))
+        {
+            case 0:
+            {
+                //lex error: a character that isn't in the language
+                return program.substring(0, position) + "@" + program.substring(position);
+            }
+            case 1:
+            {
+                //parse error: remove a brace or parenthesis
+                int brace = indexOfAny(program, "{}()", position);
+                if(brace < 0)
+                    brace = indexOfAny(program, "{}()", 0);
+                return program.substring(0, brace) + program.substring(brace + 1);
+            }
+            case 2:
+            {
+                //semantic error: use an id that was never declared (z is never declared by declare())
+                int print = program.indexOf("print(", position);
+                if(print < 0)
+                    print = program.indexOf("print(");
+                int close = program.indexOf(')', print);
+                return program.substring(0, print) + "print(z)" + program.substring(close + 1);
+            }
+            default:
+            {
+                //semantic error: assign a string to an int
+                int brace = program.indexOf('{');
+                return program.substring(0, brace + 1) + "\nint z\nz = \"oops\"" + program.substring(brace + 1);
+            }
+        }
+    }
+
+    private static int indexOfAny(String s, String chars, int start)
+    {
+        for(int i = start;i < s.length();i++)
+        {
+            if(chars.indexOf(s.charAt(i)) >= 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /*---------------------------------------- Scopes ----------------------------------------*/
+
+    private void openScope()
+    {
+        scopeIds.add(new ArrayList<String>());
+        scopeTypes.add(new ArrayList<String>());
+    }
+
+    private void closeScope()
+    {
+        scopeIds.remove(scopeIds.size() - 1);
+        scopeTypes.remove(scopeTypes.size() - 1);
+    }
+
+    //picks an id that isn't used in the current scope yet, and declares it with the type
+    //z is saved for making semantic errors, so ids are only a through y
+    private String declare(String type)
+    {
+        List<String> ids = scopeIds.get(scopeIds.size() - 1);
+
+        String id;
+        do
+        {
+            id = String.valueOf((char) ('a' + random.nextInt(25)));
+        }
+        while(ids.contains(id));
+
+        ids.add(id);
+        scopeTypes.get(scopeTypes.size() - 1).add(type);
+        return id;
+    }
+
+    //picks a random declared id of the type that can be seen from the current scope, or null if there isn't one
+    //an id in an inner scope hides the same id in outer scopes, so those are skipped
+    private String findId(String type)
+    {
+        List<String> visible = new ArrayList<String>();
+        List<String> hidden = new ArrayList<String>();
+
+        for(int scope = scopeIds.size() - 1;scope >= 0;scope--)
+        {
+            List<String> ids = scopeIds.get(scope);
+            List<String> types = scopeTypes.get(scope);
+            for(int i = 0;i < ids.size();i++)
+            {
+                if(hidden.contains(ids.get(i)))
+                    continue;
+
+                hidden.add(ids.get(i));
+                if(types.get(i).equals(type))
+                    visible.add(ids.get(i));
+            }
+        }
+
+        if(visible.isEmpty())
+            return null;
+
+        return visible.get(random.nextInt(visible.size()));
+    }
+
+    private void shuffle(List<String> list)
+    {
+        for(int i = list.size() - 1;i > 0;i--)
+        {
+            int j = random.nextInt(i + 1);
+            String temp = list.get(i);
+            list.set(i, list.get(j));
+            list.set(j, temp);
+        }
+    }
+
+    private static void line(StringBuilder program, int indent, String text)
+    {
+        indentLine(program, indent);
+        program.append(text).append("\n");
+    }
+
+    private static void indentLine(StringBuilder program, int indent)
+    {
+        for(int i = 0;i < indent;i++)
+            program.append("  ");
+    }
+}
@@ -1,3 +1,4 @@
+import java.util.ArrayDeque;
 import java.util.HashMap;
 import java.util.LinkedList;
 
@@ -8,9 +9,12 @@ public class ScopeTree
     private int scopeCount;
     private int errors;
     private int warnings;
+    private final Log log;
 
-    public ScopeTree()
+    //log is where all the messages about ids are printed
+    public ScopeTree(Log outputLog)
     {
+        log = outputLog;
         root = null;
         current = null;
         scopeCount = 0;
@@ -81,12 +85,15 @@ public class ScopeTree
                 //if it is used, there are no new warnings to print (used but not initialized is handled in useId())
                 if(!attributes.isUsed())
                 {
-                    if(attributes.isInitialized())
-                        System.out.println("WARN Semantic Analysis - id [ " + id + " ] declared at " + attributes.getDeclareLocation() +
-                                " and initialized but not used");
-                    else
-                        System.out.println("WARN Semantic Analysis - id [ " + id + " ] declared at " + attributes.getDeclareLocation() +
-                                " but not initialized or used");
+                    if(log.isEnabled(LogLevel.WARN))
+                    {
+                        if(attributes.isInitialized())
+                            log.warn("Semantic Analysis", "id [ " + id + " ] declared at " + attributes.getDeclareLocation() +
+                                    " and initialized but not used");
+                        else
+                            log.warn("Semantic Analysis", "id [ " + id + " ] declared at " + attributes.getDeclareLocation() +
+                                    " but not initialized or used");
+                    }
                     warnings++;
                 }
             }
@@ -97,60 +104,67 @@ public class ScopeTree
         }
     }
 
-    //returns a string representation of the symbol table
-    public String treeToString()
+    //prints the symbol table into the log one row at a time
+    public void printTable(Log out)
     {
         //immediately stop if root is null
         if(root == null)
-            return "";
-
-        String result = "";
+            return;
 
         //make table headers
-        result += "Symbol Table\n";
-        result += "_______________________________\n";
-        result += "Name  Type      Scope  Location\n";
-        result += "_______________________________\n";
+        out.print("Symbol Table\n");
+        out.print("_______________________________\n");
+        out.print("Name  Type      Scope  Location\n");
+        out.print("_______________________________\n");
 
         //make the queue to traverse the tree in level order (breadth first search)
-        LinkedList<ScopeTreeNode> queue = new LinkedList<ScopeTreeNode>();
+        ArrayDeque<ScopeTreeNode> queue = new ArrayDeque<ScopeTreeNode>();
         queue.add(root);
 
         while(!queue.isEmpty())
         {
             //get the node at the front of the queue
-            ScopeTreeNode current = queue.pop();
+            ScopeTreeNode current = queue.remove();
 
             //print out each of the identifiers in the current scope tree node
             HashMap<String, SymbolAttributes> ids = current.getIdentifiers();
             for(String id : ids.keySet())
             {
-                result += String.format("%-6s", id);
                 SymbolAttributes attributes = ids.get(id);
-                result += String.format("%-10s", attributes.getSymbolType());
-                result += String.format("%-7s", current.getScope());
-                result += attributes.getDeclareLocation() + "\n";
+                printColumn(out, id, 6);
+                printColumn(out, attributes.getSymbolType().toString(), 10);
+                printColumn(out, String.valueOf(current.getScope()), 7);
+                out.print(attributes.getDeclareLocation().toString());
+                out.print('\n');
             }
 
             //add all the current node's children to the queue
             for(ScopeTreeNode child : current.getChildren())
                 queue.add(child);
         }
+    }
 
-        return result;
+    //prints the value left aligned in a column of the given width (same as String.format("%-<width>s", value))
+    private static void printColumn(Log out, String value, int width)
+    {
+        out.print(value);
+        for(int i = value.length();i < width;i++)
+            out.print(' ');
     }
 
     //used to declare a new id in the scope
     //uses the symbolType passed in as its type after checking it doesn't already exist
     public void declareId(Token id, SymbolType symbolType)
     {
-        System.out.println("DEBUG Semantic Analysis - Trying to declare " + id);
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Semantic Analysis", "Trying to declare " + id);
 
         //try to find the symbol in the current scope (not parents)
         //if not found, then declare the identifier in the scope
         if(current.getSymbol(id.getValue(), false) == null)
         {
-            System.out.println("DEBUG Semantic Analysis - Declaring " + id + " in scope " + current.getScope() + " as type " + symbolType);
+            if(log.isEnabled(LogLevel.DEBUG))
+                log.debug("Semantic Analysis", "Declaring " + id + " in scope " + current.getScope() + " as type " + symbolType);
             current.addIdentifier(id.getValue(), symbolType, id.getLocation(), current.getScope());
             id.setScope(current.getScope());
         }
@@ -158,7 +172,7 @@ public class ScopeTree
         {
             //if the id is found in the current scope,
             //then log an error that the variable is already declared
-            System.out.println("ERROR Semantic Analysis - " + id + " already declared in scope");
+            log.error("Semantic Analysis", id + " already declared in scope");
             errors++;
         }
     }
@@ -166,7 +180,8 @@ public class ScopeTree
     //used to initialize an existing id to a certain type (symbolType)
     public void initializeId(Token id, SymbolType symbolType)
     {
-        System.out.println("DEBUG Semantic Analysis - Trying to initialize " + id);
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Semantic Analysis", "Trying to initialize " + id);
 
         SymbolAttributes idInfo = current.getSymbol(id.getValue(), true);
 
@@ -176,14 +191,15 @@ public class ScopeTree
             //if the symbol type matches, then there is no error, and id is successfully initialized
             if(idInfo.getSymbolType() == symbolType)
             {
-                System.out.println("DEBUG Semantic Analysis - Initializing " + id + " in scope " + idInfo.getScope() + " to type " + symbolType);
+                if(log.isEnabled(LogLevel.DEBUG))
+                    log.debug("Semantic Analysis", "Initializing " + id + " in scope " + idInfo.getScope() + " to type " + symbolType);
                 idInfo.setInitialized(true);
                 id.setScope(idInfo.getScope());
             }
             else
             {
                 //otherwise there is a type mismatch error
-                System.out.println("ERROR Semantic Analysis - Type mismatch: " +
+                log.error("Semantic Analysis", "Type mismatch: " +
                         "Cannot assign " + symbolType + " to " + idInfo.getSymbolType() + " " + id);
                 errors++;
             }
@@ -191,7 +207,7 @@ public class ScopeTree
         else
         {
             //if the symbol wasn't found, log an undeclared error
-            System.out.println("ERROR Semantic Analysis - " + id + " not declared");
+            log.error("Semantic Analysis", id + " not declared");
             errors++;
         }
     }
@@ -199,7 +215,8 @@ public class ScopeTree
     //used to use an already existing id and get its type
     public SymbolType useId(Token id)
     {
-        System.out.println("DEBUG Semantic Analysis - Trying to use " + id);
+        if(log.isEnabled(LogLevel.DEBUG))
+            log.debug("Semantic Analysis", "Trying to use " + id);
 
         SymbolAttributes idInfo = current.getSymbol(id.getValue(), true);
 
@@ -209,11 +226,13 @@ public class ScopeTree
             //if the symbol was not initialized, print a warning, but still mark the id as used
             if(!idInfo.isInitialized())
             {
-                System.out.println("WARN Semantic Analysis - " + id + " used but not initialized");
+                if(log.isEnabled(LogLevel.WARN))
+                    log.warn("Semantic Analysis", id + " used but not initialized");
                 warnings++;
             }
 
-            System.out.println("DEBUG Semantic Analysis - Using " + id + " in scope " + idInfo.getScope());
+            if(log.isEnabled(LogLevel.DEBUG))
+                log.debug("Semantic Analysis", "Using " + id + " in scope " + idInfo.getScope());
 
             idInfo.setUsed(true);
             id.setScope(idInfo.getScope());
@@ -222,7 +241,7 @@ public class ScopeTree
         else
         {
             //if the symbol wasn't found, log an undeclared error and return an unknown type
-            System.out.println("ERROR Semantic Analysis - " + id + " not declared");
+            log.error("Semantic Analysis", id + " not declared");
             errors++;
             return SymbolType.UNKNOWN;
         }
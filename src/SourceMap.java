@@ -0,0 +1,98 @@
+import java.util.ArrayList;
+
+/*
+Where each byte of an executable came from in the source, made by CodeGenerator after the code is resolved
+
+Every byte of an instruction (the op code and its operand) maps to the location of the statement it was generated for
+(the code that checks a while loop's condition and jumps back maps to the while itself, and the final BRK maps to the program)
+Bytes that aren't code (variables, the heap, and unused memory) map to null
+
+Each while loop is also kept as the range of addresses its code takes up, and the address its block starts at,
+so the cycles spent in a loop and how many times its block ran can be found from what ran at each address
+ */
+public class SourceMap
+{
+    private final Location[] locations;
+    private final ArrayList<LoopRange> loops;
+
+    public SourceMap(int executableSize)
+    {
+        locations = new Location[executableSize];
+        loops = new ArrayList<LoopRange>();
+    }
+
+    //maps size bytes starting at the address to the location
+    public void setLocation(int address, int size, Location location)
+    {
+        for(int i = address;i < address + size && i < locations.length;i++)
+            locations[i] = location;
+    }
+
+    //returns the location the byte at the address came from (or null if it isn't code)
+    public Location getLocation(int address)
+    {
+        return locations[address];
+    }
+
+    public int size()
+    {
+        return locations.length;
+    }
+
+    //adds a loop whose code goes from start up to (but not including) end, with its block starting at body
+    public void addLoop(Location location, int start, int body, int end)
+    {
+        loops.add(new LoopRange(location, start, body, end));
+    }
+
+    //returns the loops in the order their code appears in the executable (outer loops come before the loops inside them)
+    public ArrayList<LoopRange> getLoops()
+    {
+        return loops;
+    }
+}
+
+/*
+A while loop in the executable
+ */
+class LoopRange
+{
+    private final Location location;
+    private final int start;
+    private final int body;
+    private final int end;
+
+    public LoopRange(Location loopLocation, int startAddress, int bodyAddress, int endAddress)
+    {
+        location = loopLocation;
+        start = startAddress;
+        body = bodyAddress;
+        end = endAddress;
+    }
+
+    public Location getLocation()
+    {
+        return location;
+    }
+
+    public int getStart()
+    {
+        return start;
+    }
+
+    public int getBody()
+    {
+        return body;
+    }
+
+    public int getEnd()
+    {
+        return end;
+    }
+
+    //returns true if the address is part of the loop's code
+    public boolean contains(int address)
+    {
+        return address >= start && address < end;
+    }
+}
@@ -0,0 +1,36 @@
+import java.util.Scanner;
+
+/*
+Where the Lexer gets its input from, one line at a time
+ */
+public interface SourceReader
+{
+    //Returns true if there is anything other than whitespace left to read
+    boolean hasNext();
+
+    //Returns the next line without its line terminator
+    CharSequence nextLine();
+}
+
+/*
+Reads the source through a java.util.Scanner (the original way of reading input)
+ */
+class ScannerSourceReader implements SourceReader
+{
+    private final Scanner scan;
+
+    public ScannerSourceReader(Scanner inputScanner)
+    {
+        scan = inputScanner;
+    }
+
+    public boolean hasNext()
+    {
+        return scan.hasNext();
+    }
+
+    public CharSequence nextLine()
+    {
+        return scan.nextLine();
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.HashMap;
+
+/*
+Decides where in memory each variable slot of a program goes, letting variables that are never alive at the same time share a byte
+(without it, every slot in the BackpatchTable gets its own byte)
+
+A variable is only alive from its declaration to the end of the block it is declared in,
+so the variables of sibling blocks (ex. the blocks of two ifs next to each other) are never alive at the same time
+Each block's variables are placed right after its parent block's variables, like a stack,
+so sibling blocks start at the same offset and reuse the same bytes
+Every variable is set by its declaration before it is used, so it doesn't matter what a shared byte held before
+
+The temporaries made by code generation (temp, the bool temps, and the always-zero variable used for jumps) can be used anywhere,
+so each one gets its own byte before the variables
+Slots that no instruction uses anymore (ex. a variable whose every load was replaced with a constant) get no byte at all
+ */
+public class StorageAllocator
+{
+    private final SyntaxTree ast;
+    private final BackpatchTable backpatchTable;
+
+    //whether any instruction refers to each slot
+    private final boolean[] used;
+
+    //the offset of each declared variable from the start of the variables (by id and scope, ex. "a@1")
+    private final HashMap<String, Integer> variableOffsets;
+
+    //the offset of each slot from the start of the storage, and how many bytes the storage takes up
+    private int[] offsets;
+    private int size;
+
+    public StorageAllocator(SyntaxTree programAST, BackpatchTable table, CodeBuffer code)
+    {
+        ast = programAST;
+        backpatchTable = table;
+        variableOffsets = new HashMap<String, Integer>();
+
+        used = new boolean[table.size()];
+        for(int i = 0;i < code.getInstructionCount();i++)
+        {
+            if(code.getOpCode(i).getSize() == 3)
+                used[code.getOperand(i)] = true;
+        }
+    }
+
+    //works out the offset of every slot
+    public void allocate()
+    {
+        int variableSize = allocateBlock(ast.getFirstChild(ast.getRootIndex()), 0);
+
+        //temporaries go first, each in its own byte
+        offsets = new int[backpatchTable.size()];
+        int temporaryCount = 0;
+        for(int slot = 0;slot < offsets.length;slot++)
+        {
+            if(used[slot] && !variableOffsets.containsKey(key(slot)))
+            {
+                offsets[slot] = temporaryCount;
+                temporaryCount++;
+            }
+        }
+
+        for(int slot = 0;slot < offsets.length;slot++)
+        {
+            Integer variableOffset = variableOffsets.get(key(slot));
+            if(variableOffset != null)
+                offsets[slot] = temporaryCount + variableOffset;
+        }
+
+        size = temporaryCount + variableSize;
+    }
+
+    //returns the offset of each slot from the start of the storage (only valid after allocate())
+    public int[] getOffsets()
+    {
+        return offsets;
+    }
+
+    //returns how many bytes the storage takes up (only valid after allocate())
+    public int getSize()
+    {
+        return size;
+    }
+
+    //places the variables declared in the block starting at the offset, then the blocks inside it right after them
+    //returns the end of the furthest byte used by the block or any block inside it
+    private int allocateBlock(int blockNode, int start)
+    {
+        int end = start;
+
+        for(int child = ast.getFirstChild(blockNode);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+        {
+            if(ast.getNodeType(child) == NodeType.VAR_DECL)
+            {
+                Token id = ast.getToken(ast.getChild(child, 1));
+                int slot = backpatchTable.findOrCreate(id.getValue(), id.getScope());
+                if(slot < used.length && used[slot])
+                {
+                    variableOffsets.put(key(slot), end);
+                    end++;
+                }
+            }
+        }
+
+        //every block inside this one starts after this block's variables, so they can share bytes with each other
+        int furthest = end;
+        for(int child = ast.getFirstChild(blockNode);child != SyntaxTree.NONE;child = ast.getNextSibling(child))
+        {
+            switch(ast.getNodeType(child))
+            {
+                case BLOCK:
+                {
+                    furthest = Math.max(furthest, allocateBlock(child, end));
+                    break;
+                }
+                case WHILE_STATEMENT:
+                case IF_STATEMENT:
+                {
+                    furthest = Math.max(furthest, allocateBlock(ast.getChild(child, 1), end));
+                    break;
+                }
+            }
+        }
+
+        return furthest;
+    }
+
+    private String key(int slot)
+    {
+        return backpatchTable.getId(slot) + "@" + backpatchTable.getScope(slot);
+    }
+}
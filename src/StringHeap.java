@@ -0,0 +1,184 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/*
+The strings a program puts in the heap, which is laid out at the end of memory once all of them are known
+
+While code is generated each string is only given an index, and code refers to it with the operand CodeBuffer.HEAP_STRING + index
+layout() then picks the address of every string, going down from the end of memory in the order the strings were added
+    without packing, every string gets its own bytes (followed by its 00)
+    with packing, strings that no code uses anymore are left out, and a string that is the end of another string
+    (ex. "alse" and "false") points into that string instead of taking up more bytes, since both end at the same 00
+
+Uninitialized strings point at the last byte of memory, so when packing no string is ever placed there
+(otherwise "" could be packed there and be equal to an uninitialized string)
+ */
+public class StringHeap
+{
+    private final ArrayList<String> strings;
+    private final HashMap<String, Integer> indexes;
+
+    private int[] addresses;
+    private int start;
+
+    public StringHeap()
+    {
+        strings = new ArrayList<String>();
+        indexes = new HashMap<String, Integer>();
+        addresses = new int[0];
+    }
+
+    //returns the index of the string, adding it if it isn't already there
+    public int add(String s)
+    {
+        Integer index = indexes.get(s);
+        if(index == null)
+        {
+            index = strings.size();
+            strings.add(s);
+            indexes.put(s, index);
+        }
+        return index;
+    }
+
+    //returns true if the string has already been added
+    public boolean contains(String s)
+    {
+        return indexes.containsKey(s);
+    }
+
+    public int size()
+    {
+        return strings.size();
+    }
+
+    //picks the address of every string, with the heap ending right before end, and returns where the heap starts
+    //used[i] says whether any code uses string i (only looked at when packing)
+    public int layout(int end, boolean[] used, boolean pack)
+    {
+        //strings that are left out keep an address of -1
+        addresses = new int[strings.size()];
+        Arrays.fill(addresses, -1);
+        start = end;
+
+        if(!pack)
+        {
+            for(int i = 0;i < strings.size();i++)
+            {
+                start -= strings.get(i).length() + 1;
+                addresses[i] = start;
+            }
+            return start;
+        }
+
+        //"" is placed on its own at the end, since it can be any 00 except the last byte of memory
+        Integer empty = indexes.get("");
+        boolean[] packed = used.clone();
+        if(empty != null)
+            packed[empty] = false;
+
+        //host[i] is the string that string i is placed inside (itself if it needs its own bytes)
+        int[] host = findSuffixHosts(packed);
+
+        //the strings with their own bytes are placed in the order they were added
+        int lowestHost = -1;
+        int hostCount = 0;
+        for(int i = 0;i < strings.size();i++)
+        {
+            if(packed[i] && host[i] == i)
+            {
+                start -= strings.get(i).length() + 1;
+                addresses[i] = start;
+                lowestHost = i;
+                hostCount++;
+            }
+        }
+
+        //every other string points at the end of its host
+        for(int i = 0;i < strings.size();i++)
+        {
+            if(packed[i] && host[i] != i)
+                addresses[i] = addresses[host[i]] + strings.get(host[i]).length() - strings.get(i).length();
+        }
+
+        if(empty != null && used[empty])
+        {
+            if(hostCount > 1)
+            {
+                //the 00 at the end of the lowest string is never the last byte of memory if there is a string above it
+                addresses[empty] = addresses[lowestHost] + strings.get(lowestHost).length();
+            }
+            else
+            {
+                //otherwise it gets its own 00 (skipping the last byte of memory if nothing else is there)
+                start -= hostCount == 0 ? 2 : 1;
+                addresses[empty] = start;
+            }
+        }
+
+        return start;
+    }
+
+    //returns the address of each string, indexed by string (only valid after layout())
+    public int[] getAddresses()
+    {
+        return addresses;
+    }
+
+    //writes the strings into the executable (only valid after layout())
+    public void copyTo(byte[] executable)
+    {
+        for(int i = 0;i < strings.size();i++)
+        {
+            String s = strings.get(i);
+            for(int j = 0;j < s.length() && addresses[i] >= 0 && addresses[i] + j < executable.length;j++)
+                executable[addresses[i] + j] = (byte) s.charAt(j);
+        }
+    }
+
+    //finds which string each used string can be placed inside
+    //sorting the strings by their reversed text puts each string right before the strings it is the end of,
+    //so each string only needs to be checked against the one after it
+    private int[] findSuffixHosts(boolean[] used)
+    {
+        int usedCount = 0;
+        for(boolean isUsed : used)
+            usedCount += isUsed ? 1 : 0;
+
+        String[] reversed = new String[usedCount];
+        int[] order = new int[usedCount];
+        int count = 0;
+        for(int i = 0;i < strings.size();i++)
+        {
+            if(used[i])
+            {
+                order[count] = i;
+                count++;
+            }
+        }
+        for(int i = 0;i < usedCount;i++)
+            reversed[i] = new StringBuilder(strings.get(order[i])).reverse().toString();
+
+        //sort the indexes (into reversed) by the reversed text
+        Integer[] sorted = new Integer[usedCount];
+        for(int i = 0;i < usedCount;i++)
+            sorted[i] = i;
+        Arrays.sort(sorted, (a, b) -> reversed[a].compareTo(reversed[b]));
+
+        int[] host = new int[strings.size()];
+        for(int i = 0;i < host.length;i++)
+            host[i] = i;
+
+        //walk backwards so each string's host is already the final one when it is looked at
+        for(int i = usedCount - 2;i >= 0;i--)
+        {
+            String current = reversed[sorted[i]];
+            String next = reversed[sorted[i + 1]];
+            if(next.startsWith(current))
+                host[order[sorted[i]]] = host[order[sorted[i + 1]]];
+        }
+
+        return host;
+    }
+}
@@ -1,25 +1,72 @@
+/*
+A syntax tree (CST or AST), stored as a pool of nodes in parallel arrays
+
+Each node is an index into the arrays, which hold
+    the node type (as the ordinal of its NodeType)
+    the node's parent, first child, last child, and next sibling (as node indexes, or NONE)
+    the index of the node's token (leaf nodes only, NONE for branch nodes)
+    the location of the node (branch nodes only, leaf nodes use the location of their token)
+    the type of the expression (print statement and var decl nodes only, NONE otherwise)
+
+The stages walk the tree through the index methods below without making any objects
+(ex. for(int child = tree.getFirstChild(node);child != SyntaxTree.NONE;child = tree.getNextSibling(child)))
+getRoot() and SyntaxTreeNode are a view over the same arrays, for code that would rather work with node objects
+ */
 public class SyntaxTree
 {
-    private SyntaxTreeNode root;
-    private SyntaxTreeNode current;
+    //the index used for a missing node, token, or type
+    public static final int NONE = -1;
+
+    //cached since values() makes a new array every call
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+    private static final SymbolType[] SYMBOL_TYPES = SymbolType.values();
+
+    private byte[] nodeTypes;
+    private int[] parents;
+    private int[] firstChildren;
+    private int[] lastChildren;
+    private int[] nextSiblings;
+    private int[] tokenIndexes;
+    private long[] locations;
+    private byte[] exprTypes;
+    private int nodeCount;
+
+    private Token[] tokens;
+    private int tokenCount;
+
+    private int root;
+    private int current;
 
     public SyntaxTree()
     {
-        root = null;
-        current = null;
+        nodeTypes = new byte[32];
+        parents = new int[32];
+        firstChildren = new int[32];
+        lastChildren = new int[32];
+        nextSiblings = new int[32];
+        tokenIndexes = new int[32];
+        locations = new long[32];
+        exprTypes = new byte[32];
+        nodeCount = 0;
+
+        tokens = new Token[16];
+        tokenCount = 0;
+
+        root = NONE;
+        current = NONE;
     }
 
-    //return the root node of the tree
+    //return the root node of the tree (or null if there isn't one)
     public SyntaxTreeNode getRoot()
     {
-        return root;
+        return root == NONE ? null : new SyntaxTreeNode(this, root);
     }
 
     //method for adding the root node to the tree
-    //the root node has a label and no parents (null in the TreeNode constructor)
+    //the root node has a label and no parents
     public void addRootNode(NodeType nodeType, Location location)
     {
-        root = new SyntaxTreeNode(nodeType, location);
+        root = newNode(nodeType, location, NONE);
         current = root;
     }
 
@@ -27,8 +74,19 @@ public class SyntaxTree
     //non-leaf nodes always have labels instead of tokens
     public void addBranchNode(NodeType nodeType, Location location)
     {
-        SyntaxTreeNode newNode = new SyntaxTreeNode(nodeType, location);
-        current.addChild(newNode);
+        int newNode = newNode(nodeType, location, NONE);
+        addChild(current, newNode);
+        current = newNode;
+    }
+
+    //method for adding a branch node in between the current node and its last child
+    //used for operators, since the left-hand side is parsed before the operator is found
+    public void addBranchNodeAboveLastChild(NodeType nodeType, Location location)
+    {
+        int newNode = newNode(nodeType, location, NONE);
+        int lastChild = removeLastChild(current);
+        addChild(current, newNode);
+        addChild(newNode, lastChild);
         current = newNode;
     }
 
@@ -36,59 +94,339 @@ public class SyntaxTree
     //leaf nodes always have tokens
     public void addLeafNode(Token token)
     {
-        SyntaxTreeNode newNode = new SyntaxTreeNode(token);
-        current.addChild(newNode);
+        addChild(current, newNode(NodeType.TERMINAL, null, addToken(token)));
     }
 
     //utility method for moving back up the tree
     public void moveUp()
     {
-        current = current.getParent();
+        current = parents[current];
     }
 
-    //This method and its helper expand() based on code by
-    //      Alan G. Labouseur, and based on the 2009
-    //      work by Michael Ardizzone and Tim Smith.
-    public String treeToString()
+    /*---------------------------------------- Rewriting ----------------------------------------*/
+    //used by optimizations to change the tree after it is built
+
+    //turns the node into a leaf node with the token, keeping its place in the tree (its old children are dropped)
+    public void replaceWithLeaf(int node, Token token)
+    {
+        nodeTypes[node] = (byte) NodeType.TERMINAL.ordinal();
+        tokenIndexes[node] = addToken(token);
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+    }
+
+    //puts one of the node's children (or any node below it) in the node's place, dropping the node and its other children
+    public void replaceWithChild(int node, int child)
+    {
+        int parent = parents[node];
+        nextSiblings[child] = nextSiblings[node];
+        parents[child] = parent;
+
+        if(parent == NONE)
+        {
+            root = child;
+            return;
+        }
+
+        int previous = previousSibling(node);
+        if(previous == NONE)
+            firstChildren[parent] = child;
+        else
+            nextSiblings[previous] = child;
+
+        if(lastChildren[parent] == node)
+            lastChildren[parent] = child;
+    }
+
+    //removes the node (and everything below it) from its parent
+    public void removeNode(int node)
+    {
+        int parent = parents[node];
+        int previous = previousSibling(node);
+
+        if(previous == NONE)
+            firstChildren[parent] = nextSiblings[node];
+        else
+            nextSiblings[previous] = nextSiblings[node];
+
+        if(lastChildren[parent] == node)
+            lastChildren[parent] = previous;
+
+        parents[node] = NONE;
+        nextSiblings[node] = NONE;
+    }
+
+    //makes a copy of the tree that can be changed without changing this one (the tokens are shared)
+    public SyntaxTree copy()
+    {
+        SyntaxTree copy = new SyntaxTree();
+        copy.nodeTypes = nodeTypes.clone();
+        copy.parents = parents.clone();
+        copy.firstChildren = firstChildren.clone();
+        copy.lastChildren = lastChildren.clone();
+        copy.nextSiblings = nextSiblings.clone();
+        copy.tokenIndexes = tokenIndexes.clone();
+        copy.locations = locations.clone();
+        copy.exprTypes = exprTypes.clone();
+        copy.nodeCount = nodeCount;
+        copy.tokens = tokens.clone();
+        copy.tokenCount = tokenCount;
+        copy.root = root;
+        copy.current = current;
+        return copy;
+    }
+
+    /*---------------------------------------- Node Index Methods ----------------------------------------*/
+
+    //returns the index of the root node (or NONE if there isn't one)
+    public int getRootIndex()
+    {
+        return root;
+    }
+
+    public NodeType getNodeType(int node)
+    {
+        return NODE_TYPES[nodeTypes[node]];
+    }
+
+    public int getParent(int node)
+    {
+        return parents[node];
+    }
+
+    public int getFirstChild(int node)
+    {
+        return firstChildren[node];
+    }
+
+    public int getNextSibling(int node)
+    {
+        return nextSiblings[node];
+    }
+
+    //returns the child at the index (or NONE if there aren't that many children)
+    public int getChild(int node, int index)
+    {
+        int child = firstChildren[node];
+        for(int i = 0;i < index && child != NONE;i++)
+            child = nextSiblings[child];
+        return child;
+    }
+
+    public int getChildCount(int node)
+    {
+        int count = 0;
+        for(int child = firstChildren[node];child != NONE;child = nextSiblings[child])
+            count++;
+        return count;
+    }
+
+    //returns the token of a leaf node (or null for a branch node)
+    public Token getToken(int node)
+    {
+        return tokenIndexes[node] == NONE ? null : tokens[tokenIndexes[node]];
+    }
+
+    public Location getLocation(int node)
+    {
+        if(tokenIndexes[node] != NONE)
+            return tokens[tokenIndexes[node]].getLocation();
+
+        return new Location((int) (locations[node] >>> 32), (int) locations[node]);
+    }
+
+    //returns the type printed/declared by a print statement or var decl (or null if it hasn't been set)
+    public SymbolType getExprType(int node)
+    {
+        return exprTypes[node] == NONE ? null : SYMBOL_TYPES[exprTypes[node]];
+    }
+
+    public void setExprType(int node, SymbolType type)
+    {
+        exprTypes[node] = (byte) type.ordinal();
+    }
+
+    //the node is a leaf node iff it has a token instead of just a label
+    public boolean isLeaf(int node)
     {
-        return expand(root, 0);
+        return tokenIndexes[node] != NONE;
     }
 
-    //Code based on other work, see treeToString() above
-    //Recursive function to handle the expansion of the nodes.
-    private String expand(SyntaxTreeNode node, int depth)
+    //returns the value of the token for a leaf node, or the name of the node type for a branch node
+    public String getLabel(int node)
     {
-        //immediately stop if root is null
-        if(root == null)
-            return "";
+        return tokenIndexes[node] == NONE ? getNodeType(node).toString() : tokens[tokenIndexes[node]].getValue();
+    }
 
-        String traversalResult = "";
+    /*---------------------------------------- Printing ----------------------------------------*/
 
+    //Prints the tree into the log one node at a time, so the whole tree is never held in memory as a string
+    //The tree is walked with the parent and sibling links instead of recursion, so a tree of any depth can be printed
+    //The format is based on code by
+    //      Alan G. Labouseur, and based on the 2009
+    //      work by Michael Ardizzone and Tim Smith.
+    public void printTree(Log out)
+    {
+        int node = root;
+        int depth = 0;
+
+        while(node != NONE)
+        {
+            printNode(node, depth, out);
+
+            if(firstChildren[node] != NONE)
+            {
+                //go down to the first child
+                node = firstChildren[node];
+                depth++;
+            }
+            else
+            {
+                //go back up until there is a node with a next sibling (or past the root when the whole tree is done)
+                while(node != NONE && nextSiblings[node] == NONE)
+                {
+                    node = parents[node];
+                    depth--;
+                }
+
+                if(node != NONE)
+                    node = nextSiblings[node];
+            }
+        }
+    }
+
+    private void printNode(int node, int depth, Log out)
+    {
         // Space out based on the current depth so
         // this looks at least a little tree-like.
         for (int i = 0; i < depth; i++)
         {
-            traversalResult += "-";
+            out.print('-');
         }
 
-        // If the node is a leaf node...
-        if (node.isLeaf())
+        if (isLeaf(node))
         {
-            // ... note the leaf node.
-            traversalResult += "[" + node + "]";
-            traversalResult += "\n";
+            // note the leaf node
+            out.print('[');
+            out.print(getLabel(node));
+            out.print(']');
+            out.print('\n');
         }
         else
         {
-            // There are children, so note these interior/branch nodes and ...
-            traversalResult += "<" + node + "> \n";
-            // .. recursively expand them.
-            for (int i = 0; i < node.getChildren().size(); i++)
-            {
-                traversalResult += expand(node.getChildren().get(i), depth + 1);
-            }
+            // note the interior/branch node (its children are printed after it)
+            out.print('<');
+            out.print(getLabel(node));
+            out.print("> \n");
+        }
+    }
+
+    /*---------------------------------------- Node Pool ----------------------------------------*/
+
+    //makes a node with no parent or children, and returns its index
+    private int newNode(NodeType nodeType, Location location, int tokenIndex)
+    {
+        if(nodeCount == nodeTypes.length)
+            grow();
+
+        int node = nodeCount;
+        nodeTypes[node] = (byte) nodeType.ordinal();
+        parents[node] = NONE;
+        firstChildren[node] = NONE;
+        lastChildren[node] = NONE;
+        nextSiblings[node] = NONE;
+        tokenIndexes[node] = tokenIndex;
+        locations[node] = location == null ? 0 : ((long) location.getLine() << 32) | (location.getColumn() & 0xFFFFFFFFL);
+        exprTypes[node] = NONE;
+        nodeCount++;
+
+        return node;
+    }
+
+    //adds the token to the token list, and returns its index
+    private int addToken(Token token)
+    {
+        if(tokenCount == tokens.length)
+        {
+            Token[] newTokens = new Token[tokens.length * 2];
+            System.arraycopy(tokens, 0, newTokens, 0, tokenCount);
+            tokens = newTokens;
         }
+        tokens[tokenCount] = token;
+        tokenCount++;
+
+        return tokenCount - 1;
+    }
+
+    //returns the sibling right before the node (or NONE if it is the first child)
+    private int previousSibling(int node)
+    {
+        int previous = NONE;
+        for(int child = firstChildren[parents[node]];child != node;child = nextSiblings[child])
+            previous = child;
+        return previous;
+    }
+
+    private void addChild(int parent, int child)
+    {
+        if(firstChildren[parent] == NONE)
+            firstChildren[parent] = child;
+        else
+            nextSiblings[lastChildren[parent]] = child;
+
+        lastChildren[parent] = child;
+        parents[child] = parent;
+    }
+
+    //removes the last child of the node and returns it
+    private int removeLastChild(int parent)
+    {
+        int lastChild = lastChildren[parent];
+
+        //find the child before it (operators only ever have a few children before them, so the walk is short)
+        int previous = NONE;
+        for(int child = firstChildren[parent];child != lastChild;child = nextSiblings[child])
+            previous = child;
+
+        if(previous == NONE)
+            firstChildren[parent] = NONE;
+        else
+            nextSiblings[previous] = NONE;
+
+        lastChildren[parent] = previous;
+        parents[lastChild] = NONE;
+        return lastChild;
+    }
+
+    private void grow()
+    {
+        int newLength = nodeTypes.length * 2;
+
+        byte[] newNodeTypes = new byte[newLength];
+        int[] newParents = new int[newLength];
+        int[] newFirstChildren = new int[newLength];
+        int[] newLastChildren = new int[newLength];
+        int[] newNextSiblings = new int[newLength];
+        int[] newTokenIndexes = new int[newLength];
+        long[] newLocations = new long[newLength];
+        byte[] newExprTypes = new byte[newLength];
+
+        System.arraycopy(nodeTypes, 0, newNodeTypes, 0, nodeCount);
+        System.arraycopy(parents, 0, newParents, 0, nodeCount);
+        System.arraycopy(firstChildren, 0, newFirstChildren, 0, nodeCount);
+        System.arraycopy(lastChildren, 0, newLastChildren, 0, nodeCount);
+        System.arraycopy(nextSiblings, 0, newNextSiblings, 0, nodeCount);
+        System.arraycopy(tokenIndexes, 0, newTokenIndexes, 0, nodeCount);
+        System.arraycopy(locations, 0, newLocations, 0, nodeCount);
+        System.arraycopy(exprTypes, 0, newExprTypes, 0, nodeCount);
 
-        return traversalResult;
+        nodeTypes = newNodeTypes;
+        parents = newParents;
+        firstChildren = newFirstChildren;
+        lastChildren = newLastChildren;
+        nextSiblings = newNextSiblings;
+        tokenIndexes = newTokenIndexes;
+        locations = newLocations;
+        exprTypes = newExprTypes;
     }
 }
@@ -1,4 +1,4 @@
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 
 enum NodeType
@@ -41,101 +41,94 @@ enum NodeType
     }
 }
 
+/*
+A view of one node in a SyntaxTree
+The node itself is stored in the tree's arrays, so these are made as needed and are cheap to throw away
+ */
 public class SyntaxTreeNode
 {
-    private final String label;
-    private final NodeType nodeType;
-    private final Token token;
-    private SyntaxTreeNode parent;
-    private final List<SyntaxTreeNode> children;
-    private final Location location;
+    private final SyntaxTree tree;
+    private final int index;
 
-    //used specifically for print statement and var decl nodes to save what type they are printing/declaring
-    private SymbolType exprType;
-
-    //Constructor for branch nodes that have a non-terminal type and no token
-    //Instead of a token, they are given a location of the first token within the nonterminal
-    public SyntaxTreeNode(NodeType nonTerminal, Location startLocation)
-    {
-        nodeType = nonTerminal;
-        token = null;
-        parent = null;
-        label = nonTerminal.toString();
-        children = new LinkedList<SyntaxTreeNode>();
-        location = startLocation;
-    }
-
-    //Constructor for leaf nodes that have an associated token
-    public SyntaxTreeNode(Token terminal)
+    //only made by the SyntaxTree (or another node in it)
+    SyntaxTreeNode(SyntaxTree syntaxTree, int nodeIndex)
     {
-        nodeType = NodeType.TERMINAL;
-        token = terminal;
-        parent = null;
-        label = terminal.getValue();
-        children = new LinkedList<SyntaxTreeNode>();
-        location = terminal.getLocation();
+        tree = syntaxTree;
+        index = nodeIndex;
     }
 
-    public void addChild(SyntaxTreeNode child)
+    //the index of this node in the tree, for use with the tree's index methods
+    public int getIndex()
     {
-        children.add(child);
-        child.parent = this;
+        return index;
     }
 
     // same as toString, but here for good measure
     public String getLabel()
     {
-        return label;
+        return tree.getLabel(index);
     }
 
     public Token getToken()
     {
-        return token;
+        return tree.getToken(index);
     }
 
     public NodeType getNodeType()
     {
-        return nodeType;
+        return tree.getNodeType(index);
     }
 
     public SyntaxTreeNode getParent()
     {
-        return parent;
+        return view(tree.getParent(index));
     }
 
     public List<SyntaxTreeNode> getChildren()
     {
+        List<SyntaxTreeNode> children = new ArrayList<SyntaxTreeNode>();
+        for(int child = tree.getFirstChild(index);child != SyntaxTree.NONE;child = tree.getNextSibling(child))
+            children.add(view(child));
         return children;
     }
 
-    public SyntaxTreeNode getChild(int index)
+    public SyntaxTreeNode getChild(int childIndex)
     {
-        return children.get(index);
+        int child = tree.getChild(index, childIndex);
+        if(child == SyntaxTree.NONE)
+            throw new IndexOutOfBoundsException("Index: " + childIndex);
+        return view(child);
     }
 
     public Location getLocation()
     {
-        return location;
+        return tree.getLocation(index);
     }
 
+    //used specifically for print statement and var decl nodes to save what type they are printing/declaring
     public SymbolType getExprType()
     {
-        return exprType;
+        return tree.getExprType(index);
     }
 
     public void setExprType(SymbolType type)
     {
-        exprType = type;
+        tree.setExprType(index, type);
     }
 
     //the node is a leaf node iff it has a token instead of just a label
     public boolean isLeaf()
     {
-        return token != null;
+        return tree.isLeaf(index);
     }
 
     public String toString()
     {
-        return label;
+        return getLabel();
+    }
+
+    private SyntaxTreeNode view(int node)
+    {
+        return node == SyntaxTree.NONE ? null : new SyntaxTreeNode(tree, node);
     }
 }
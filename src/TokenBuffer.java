@@ -0,0 +1,109 @@
+/*
+The tokens of one program, stored as parallel arrays instead of as Token objects
+
+Each token has
+    a type (stored as the ordinal of its TokenType)
+    a line and column (packed into one long, with the line in the top half)
+    a value (stored as an offset into one shared block of text, and running up to the offset of the next token)
+
+Any token can be looked at by its index in constant time
+Token objects are only made by get(), which is used when a tree leaf or an error message needs one
+ */
+public class TokenBuffer
+{
+    //cached since values() makes a new array every call
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private byte[] types;
+    private long[] positions;
+    private int[] valueStarts;
+    private final StringBuilder values;
+    private int count;
+
+    public TokenBuffer()
+    {
+        types = new byte[64];
+        positions = new long[64];
+        valueStarts = new int[64];
+        values = new StringBuilder();
+        count = 0;
+    }
+
+    //adds a token whose value is the characters from start to end in the source
+    public void add(TokenType type, CharSequence source, int start, int end, int line, int column)
+    {
+        if(count == types.length)
+            grow();
+
+        types[count] = (byte) type.ordinal();
+        positions[count] = ((long) line << 32) | (column & 0xFFFFFFFFL);
+        valueStarts[count] = values.length();
+        values.append(source, start, end);
+        count++;
+    }
+
+    public void add(TokenType type, String value, int line, int column)
+    {
+        add(type, value, 0, value.length(), line, column);
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public TokenType getType(int index)
+    {
+        return TOKEN_TYPES[types[index]];
+    }
+
+    public int getLine(int index)
+    {
+        return (int) (positions[index] >>> 32);
+    }
+
+    public int getColumn(int index)
+    {
+        return (int) positions[index];
+    }
+
+    public Location getLocation(int index)
+    {
+        return new Location(getLine(index), getColumn(index));
+    }
+
+    public String getValue(int index)
+    {
+        return values.substring(valueStarts[index], valueEnd(index));
+    }
+
+    //adds the value of the token to the end of the builder, without making a String for it
+    public void appendValue(int index, StringBuilder builder)
+    {
+        builder.append(values, valueStarts[index], valueEnd(index));
+    }
+
+    //makes a Token object for the token at the index
+    public Token get(int index)
+    {
+        return new Token(getType(index), getValue(index), getLine(index), getColumn(index));
+    }
+
+    private int valueEnd(int index)
+    {
+        return index + 1 < count ? valueStarts[index + 1] : values.length();
+    }
+
+    private void grow()
+    {
+        byte[] newTypes = new byte[types.length * 2];
+        long[] newPositions = new long[positions.length * 2];
+        int[] newValueStarts = new int[valueStarts.length * 2];
+        System.arraycopy(types, 0, newTypes, 0, count);
+        System.arraycopy(positions, 0, newPositions, 0, count);
+        System.arraycopy(valueStarts, 0, newValueStarts, 0, count);
+        types = newTypes;
+        positions = newPositions;
+        valueStarts = newValueStarts;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+The class every executable translated by ExecutableTranslator extends, which holds the state of the 6502a while it runs
+
+The translated class only has the code: runBlock() runs the basic block starting at an address and returns where to go next
+    an address (0 to 255)       the next block to run
+    HALTED                      the block ended with a BRK
+    INTERPRET - address         the rest of the program has to be run by the Emulator starting at the address
+                                (an instruction that isn't valid, or a block that would go past the instruction limit)
+Each block keeps the registers in locals while it runs, and only writes them back here when it ends,
+so the registers in here are only up to date between blocks
+
+Everything a run does matches the Emulator exactly, including the output, the cycles, and how the run ended
+ */
+public abstract class TranslatedProgram implements ExecutableRunner
+{
+    //what runBlock() returns when the program halts, and the start of what it returns to leave the rest to the Emulator
+    public static final int HALTED = -1;
+    public static final int INTERPRET = -2;
+
+    protected byte[] memory;
+    protected int accumulator;
+    protected int xRegister;
+    protected int yRegister;
+    protected boolean zeroFlag;
+
+    protected long cycles;
+    protected long instructionCount;
+    protected long instructionLimit;
+
+    private final StringBuilder output;
+    private ExecutionResult result;
+
+    //the emulator that ran the end of the program, if a block left it to the emulator
+    private Emulator emulator;
+
+    protected TranslatedProgram()
+    {
+        output = new StringBuilder();
+        instructionLimit = Emulator.DEFAULT_INSTRUCTION_LIMIT;
+    }
+
+    //gives the program its memory (the executable is copied, so running it never changes the original)
+    void load(byte[] executable)
+    {
+        memory = new byte[0x100];
+        System.arraycopy(executable, 0, memory, 0, Math.min(executable.length, memory.length));
+    }
+
+    public void setInstructionLimit(long limit)
+    {
+        instructionLimit = limit;
+    }
+
+    public ExecutionResult run()
+    {
+        if(result != null)
+            return result;
+
+        int next = 0;
+        while(next >= 0)
+            next = runBlock(next);
+
+        if(next == HALTED)
+        {
+            result = ExecutionResult.HALTED;
+        }
+        else
+        {
+            emulator = new Emulator(memory);
+            emulator.setInstructionLimit(instructionLimit);
+            emulator.resume(accumulator, xRegister, yRegister, zeroFlag, INTERPRET - next, cycles, instructionCount, output.toString());
+            result = emulator.run();
+        }
+
+        return result;
+    }
+
+    public String getOutput()
+    {
+        return emulator == null ? output.toString() : emulator.getOutput();
+    }
+
+    public long getCycles()
+    {
+        return emulator == null ? cycles : emulator.getCycles();
+    }
+
+    public long getInstructionCount()
+    {
+        return emulator == null ? instructionCount : emulator.getInstructionCount();
+    }
+
+    public ExecutionResult getResult()
+    {
+        return result;
+    }
+
+    //runs the block starting at the address, returning the address of the next block (or HALTED, or INTERPRET - address)
+    protected abstract int runBlock(int address);
+
+    //the same as a SYS in the Emulator, with the X and Y registers passed in since the block has them in locals
+    protected void systemCall(int x, int y)
+    {
+        if(x == 1)
+        {
+            output.append(y);
+        }
+        else if(x == 2)
+        {
+            for(int i = y;i < memory.length && memory[i] != 0;i++)
+                output.append((char) (memory[i] & 0xFF));
+        }
+    }
+}